@@ -0,0 +1,30 @@
+import axios from 'axios';
+
+// Guest carts can be kept client-side as a signed token (backend: cart.guest-token.enabled).
+// Send the stored token with every cart call and keep whatever the server re-issues.
+const CART_TOKEN_HEADER = 'X-Cart-Token';
+const STORAGE_KEY = 'cartToken';
+
+export const installCartTokenInterceptors = () => {
+  axios.interceptors.request.use(config => {
+    const token = localStorage.getItem(STORAGE_KEY);
+    if (token && config.url && config.url.includes('/api/cart')) {
+      config.headers = config.headers || {};
+      config.headers[CART_TOKEN_HEADER] = token;
+    }
+    return config;
+  });
+
+  axios.interceptors.response.use(response => {
+    const token = response.headers && response.headers[CART_TOKEN_HEADER.toLowerCase()];
+    if (token !== undefined) {
+      if (token) {
+        localStorage.setItem(STORAGE_KEY, token);
+      } else {
+        // An empty token means the cart was moved to the user's account
+        localStorage.removeItem(STORAGE_KEY);
+      }
+    }
+    return response;
+  });
+};
@@ -1,4 +1,4 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import axios from 'axios';
 import { FaCreditCard, FaMobile, FaCheck, FaArrowLeft, FaWallet, FaUniversity, FaListAlt } from 'react-icons/fa';
 import '../css/CustomerCart.css';
@@ -14,6 +14,8 @@ const CustomerCart = () => {
   const [orderedItems, setOrderedItems] = useState([]);
   const [orderDate, setOrderDate] = useState('');
   const [orderTotal, setOrderTotal] = useState(0);
+  // Idempotency-Key for the order being placed; reused when the same order is retried
+  const pendingOrderRef = useRef(null);
   
   const [paymentInfo, setPaymentInfo] = useState({
     method: 'CREDIT_CARD',
@@ -441,9 +443,18 @@ const CustomerCart = () => {
 
       console.log('Placing order with data:', orderData);
 
+      const orderPayload = JSON.stringify({ totalAmount: orderData.totalAmount, orderItems: orderData.orderItems, paymentMethod: orderData.paymentMethod });
+      if (!pendingOrderRef.current || pendingOrderRef.current.payload !== orderPayload) {
+        const key = window.crypto?.randomUUID
+          ? window.crypto.randomUUID()
+          : `${Date.now()}-${Math.random().toString(36).slice(2)}`;
+        pendingOrderRef.current = { payload: orderPayload, key };
+      }
+
       const headers = {
         'X-Session-Id': sessionId, // ADDED: Send session ID
         'X-User-Id': userId,
+        'Idempotency-Key': pendingOrderRef.current.key,
         'Content-Type': 'application/json'
       };
 
@@ -452,6 +463,7 @@ const CustomerCart = () => {
       });
 
       console.log('✅ Order created:', response.data);
+      pendingOrderRef.current = null;
 
       setOrderId(response.data.orderId);
 
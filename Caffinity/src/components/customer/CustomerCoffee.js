@@ -92,7 +92,8 @@ const CustomerCoffee = () => {
         console.log('First product ID field:', response.data[0].id, response.data[0].productId);
       }
       
-      const productsWithImages = response.data.map(product => ({
+      // Retired products are kept for admins but hidden from customers
+      const productsWithImages = response.data.filter(product => product.available !== false).map(product => ({
         ...product,
         imageUrl: product.imageUrl || getPlaceholderImage(product.name)
       }));
@@ -273,11 +274,13 @@ const CustomerCoffee = () => {
 
   // Get image source for product
   const getProductImage = (product) => {
-    if (product.imageUrl) {
-      if (product.imageUrl.startsWith('http')) {
-        return product.imageUrl;
+    // Prefer the resized card image once the backend has generated it
+    const imageUrl = product.mediumUrl || product.imageUrl;
+    if (imageUrl) {
+      if (imageUrl.startsWith('http')) {
+        return imageUrl;
       }
-      return `http://localhost:8080${product.imageUrl}`;
+      return `http://localhost:8080${imageUrl}`;
     }
     return getPlaceholderImage(product.name);
   };
@@ -87,7 +87,8 @@ const CustomerDesserts = () => {
         console.log('All dessert categories found:', response.data.map(p => p.category));
       }
       
-      const productsWithImages = response.data.map(product => ({
+      // Retired products are kept for admins but hidden from customers
+      const productsWithImages = response.data.filter(product => product.available !== false).map(product => ({
         ...product,
         imageUrl: product.imageUrl || getPlaceholderImage(product.name)
       }));
@@ -286,11 +287,13 @@ const CustomerDesserts = () => {
 
   // Get image source for product
   const getProductImage = (product) => {
-    if (product.imageUrl) {
-      if (product.imageUrl.startsWith('http')) {
-        return product.imageUrl;
+    // Prefer the resized card image once the backend has generated it
+    const imageUrl = product.mediumUrl || product.imageUrl;
+    if (imageUrl) {
+      if (imageUrl.startsWith('http')) {
+        return imageUrl;
       }
-      return `http://localhost:8080${product.imageUrl}`;
+      return `http://localhost:8080${imageUrl}`;
     }
     return getPlaceholderImage(product.name);
   };
@@ -0,0 +1,45 @@
+package com.caffinity.demo.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+
+// Order and OrderItem take their ids from id_allocations (Hibernate table generator, pooled-lo:
+// next_val is the first id of the next block). Orders created while the columns were
+// AUTO_INCREMENT already use low ids, so each row is moved past the current maximum at startup.
+// Rows only ever move forward, which keeps this safe while other instances are running.
+@Component
+public class IdAllocationInitializer {
+
+    private static final String CREATE_TABLE_SQL =
+            "CREATE TABLE IF NOT EXISTS id_allocations (sequence_name VARCHAR(255) NOT NULL PRIMARY KEY, next_val BIGINT)";
+
+    private static final String SEED_SQL =
+            "INSERT INTO id_allocations (sequence_name, next_val) " +
+            "SELECT * FROM (SELECT ? AS name, COALESCE(MAX(%s), 0) + 1 AS val FROM %s) AS source " +
+            "ON DUPLICATE KEY UPDATE next_val = GREATEST(COALESCE(next_val, 0), source.val)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Injected so the schema update has run before the tables are read
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    void seed() {
+        jdbcTemplate.execute(CREATE_TABLE_SQL);
+        seed("orders", "order_id", "orders");
+        seed("order_items", "order_item_id", "order_items");
+    }
+
+    private void seed(String sequenceName, String idColumn, String table) {
+        jdbcTemplate.update(String.format(SEED_SQL, idColumn, table), sequenceName);
+        Long next = jdbcTemplate.queryForObject(
+                "SELECT next_val FROM id_allocations WHERE sequence_name = ?", Long.class, sequenceName);
+        System.out.println("🆔 Next " + sequenceName + " id block starts at " + next);
+    }
+}
@@ -0,0 +1,19 @@
+package com.caffinity.demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.caffinity.demo.service.IdGenerator;
+import com.caffinity.demo.service.SnowflakeIdGenerator;
+
+@Configuration
+public class IdGeneratorConfig {
+
+    // ids.node-id must differ between instances that share a database (0-1023)
+    @Bean
+    public IdGenerator idGenerator(@Value("${ids.node-id:0}") long nodeId) {
+        System.out.println("🆔 Id generator node id: " + nodeId);
+        return new SnowflakeIdGenerator(nodeId);
+    }
+}
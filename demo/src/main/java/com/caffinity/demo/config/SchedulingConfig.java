@@ -0,0 +1,10 @@
+package com.caffinity.demo.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Turns on @Scheduled background jobs (cart write-behind flushing, cleanups)
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,15 +1,109 @@
 package com.caffinity.demo.config;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.servlets.DefaultServlet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import jakarta.servlet.Filter;
+import jakarta.servlet.http.HttpServletResponse;
+
+// Uploaded images are served by Tomcat's DefaultServlet rather than through Spring MVC.
+// It answers conditional requests (ETag/Last-Modified) and byte ranges, keeps resolved files
+// in Tomcat's resource cache, prefers precompressed .br/.gz siblings when present, and uses
+// sendfile (zero-copy) for large files on the NIO connector.
 @Configuration
-public class WebConfig implements WebMvcConfigurer {
+public class WebConfig {
+
+    public static final String UPLOADS_MOUNT = "/uploads";
+
+    // Uploaded images are named by content hash and never rewritten, so they can be cached forever
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    @Value("${file.upload-dir:src/uploads}")
+    private String uploadDir;
+
+    // Resource cache size for uploads, in KB
+    @Value("${uploads.cache-max-size-kb:51200}")
+    private long cacheMaxSizeKb;
+
+    @Bean
+    public ServletRegistrationBean<DefaultServlet> uploadsServlet() {
+        ServletRegistrationBean<DefaultServlet> registration =
+                new ServletRegistrationBean<>(new DefaultServlet(), UPLOADS_MOUNT + "/*");
+        registration.setName("uploads");
+        registration.addInitParameter("listings", "false");
+        registration.addInitParameter("precompressed", "true");
+        registration.addInitParameter("useAcceptRanges", "true");
+        // Files larger than this many KB go out via sendfile
+        registration.addInitParameter("sendfileSize", "48");
+        registration.setLoadOnStartup(1);
+        return registration;
+    }
+
+    // Mounts the upload directory into Tomcat's resources at /uploads, where DefaultServlet looks
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> uploadsResourceCustomizer() {
+        Path root = uploadRoot();
+        return factory -> factory.addContextCustomizers(context -> context.addLifecycleListener(event -> {
+            if (Lifecycle.CONFIGURE_START_EVENT.equals(event.getType())) {
+                mountUploads(context, root, cacheMaxSizeKb);
+            }
+        }));
+    }
+
+    @Bean
+    public FilterRegistrationBean<Filter> uploadsCacheControlFilter() {
+        Filter filter = (request, response, chain) -> {
+            HttpServletResponse httpResponse = (HttpServletResponse) response;
+            httpResponse.setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+            // The response must reach DefaultServlet unwrapped: Tomcat only uses sendfile when it
+            // sees its own request/response facades
+            chain.doFilter(request, response);
+            // Don't let a 404 for a not-yet-uploaded name get cached for a year. sendError only
+            // marks the response; the error page is written after the filters return.
+            if (httpResponse.getStatus() >= 400 && !httpResponse.isCommitted()) {
+                httpResponse.setHeader("Cache-Control", "no-cache");
+            }
+        };
+        FilterRegistrationBean<Filter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns(UPLOADS_MOUNT + "/*");
+        registration.setName("uploadsCacheControl");
+        return registration;
+    }
+
+    static void mountUploads(Context context, Path root, long cacheMaxSizeKb) {
+        WebResourceRoot resources = context.getResources();
+        try {
+            resources.createWebResourceSet(WebResourceRoot.ResourceSetType.PRE, UPLOADS_MOUNT,
+                    root.toUri().toURL(), "/");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not mount upload directory " + root, e);
+        }
+        resources.setCachingAllowed(true);
+        resources.setCacheMaxSize(Math.max(resources.getCacheMaxSize(), cacheMaxSizeKb));
+    }
 
-    @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations("file:src/uploads/");
+    private Path uploadRoot() {
+        Path root = Paths.get(uploadDir).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create upload directory " + root, e);
+        }
+        return root;
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,8 @@
 package com.caffinity.demo.controller;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,65 +16,102 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.caffinity.demo.entity.Cart;
+import com.caffinity.demo.entity.CartItem;
+import com.caffinity.demo.entity.Product;
 import com.caffinity.demo.service.CartService;
+import com.caffinity.demo.service.GuestCartSweeper;
+import com.caffinity.demo.service.GuestCartTokenService;
 
 @RestController
 @RequestMapping("/api/cart")
-@CrossOrigin(origins = "http://localhost:3000")
+@CrossOrigin(origins = "http://localhost:3000", exposedHeaders = CartController.CART_TOKEN_HEADER)
 public class CartController {
     
+    // Carries a guest's signed cart when cart.guest-token.enabled is on; re-issued on every response
+    public static final String CART_TOKEN_HEADER = "X-Cart-Token";
+    
     @Autowired
     private CartService cartService;
     
+    @Autowired
+    private GuestCartTokenService guestCartTokens;
+    
+    @Autowired
+    private GuestCartSweeper guestCartSweeper;
+    
+    // ?view=summary returns just the counts and subtotal (header badge)
     @GetMapping
-    public ResponseEntity<Cart> getCart(
+    public ResponseEntity<?> getCart(
             @RequestHeader("X-Session-Id") String sessionId,
-            @RequestHeader(value = "X-User-Id", required = false) Long userId) { // CHANGED to required = false
+            @RequestHeader(value = "X-User-Id", required = false) Long userId, // CHANGED to required = false
+            @RequestHeader(value = CART_TOKEN_HEADER, required = false) String cartToken,
+            @RequestParam(value = "view", required = false) String view) {
         try {
+            if (usesGuestToken(userId)) {
+                GuestCartTokenService.TokenCart tokenCart = guestCartTokens.read(cartToken);
+                Object body = "summary".equals(view) ? CartSummaryView.of(tokenCart.getCart()) : CartView.of(tokenCart.getCart());
+                return ResponseEntity.ok().header(CART_TOKEN_HEADER, tokenCart.getToken()).body(body);
+            }
             Cart cart = cartService.getOrCreateCart(sessionId, userId);
-            return ResponseEntity.ok(cart);
+            if ("summary".equals(view)) {
+                return ResponseEntity.ok(CartSummaryView.of(cart));
+            }
+            return ResponseEntity.ok(CartView.of(cart));
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
     
     @PostMapping("/add")
-    public ResponseEntity<Cart> addToCart(
+    public ResponseEntity<CartView> addToCart(
             @RequestHeader("X-Session-Id") String sessionId,
             @RequestHeader(value = "X-User-Id", required = false) Long userId, // CHANGED to required = false
+            @RequestHeader(value = CART_TOKEN_HEADER, required = false) String cartToken,
             @RequestBody AddToCartRequest request) {
         try {
+            if (usesGuestToken(userId)) {
+                return tokenResponse(guestCartTokens.add(cartToken, request.getProductId(), request.getQuantity()));
+            }
             Cart cart = cartService.addToCart(sessionId, request.getProductId(), request.getQuantity(), userId);
-            return ResponseEntity.ok(cart);
+            return ResponseEntity.ok(CartView.of(cart));
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
     
     @PutMapping("/update")
-    public ResponseEntity<Cart> updateCartItem(
+    public ResponseEntity<CartView> updateCartItem(
             @RequestHeader("X-Session-Id") String sessionId,
             @RequestHeader(value = "X-User-Id", required = false) Long userId, // CHANGED to required = false
+            @RequestHeader(value = CART_TOKEN_HEADER, required = false) String cartToken,
             @RequestBody UpdateCartRequest request) {
         try {
+            if (usesGuestToken(userId)) {
+                return tokenResponse(guestCartTokens.update(cartToken, request.getProductId(), request.getQuantity()));
+            }
             Cart cart = cartService.updateCartItem(sessionId, request.getProductId(), request.getQuantity(), userId);
-            return ResponseEntity.ok(cart);
+            return ResponseEntity.ok(CartView.of(cart));
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
     
     @DeleteMapping("/remove/{productId}")
-    public ResponseEntity<Cart> removeFromCart(
+    public ResponseEntity<CartView> removeFromCart(
             @RequestHeader("X-Session-Id") String sessionId,
             @RequestHeader(value = "X-User-Id", required = false) Long userId, // CHANGED to required = false
+            @RequestHeader(value = CART_TOKEN_HEADER, required = false) String cartToken,
             @PathVariable Long productId) {
         try {
+            if (usesGuestToken(userId)) {
+                return tokenResponse(guestCartTokens.remove(cartToken, productId));
+            }
             Cart cart = cartService.removeFromCart(sessionId, productId, userId);
-            return ResponseEntity.ok(cart);
+            return ResponseEntity.ok(CartView.of(cart));
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
@@ -83,30 +122,74 @@ public class CartController {
             @RequestHeader("X-Session-Id") String sessionId,
             @RequestHeader(value = "X-User-Id", required = false) Long userId) { // CHANGED to required = false
         try {
-            cartService.clearCart(sessionId, userId);
             Map<String, String> response = new HashMap<>();
             response.put("message", "Cart cleared successfully");
+            if (usesGuestToken(userId)) {
+                return ResponseEntity.ok().header(CART_TOKEN_HEADER, guestCartTokens.clear().getToken()).body(response);
+            }
+            cartService.clearCart(sessionId, userId);
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
     
+    // Several cart changes in one round trip, applied in order and all-or-nothing
+    @PostMapping("/batch")
+    public ResponseEntity<?> applyBatch(
+            @RequestHeader("X-Session-Id") String sessionId,
+            @RequestHeader(value = "X-User-Id", required = false) Long userId,
+            @RequestHeader(value = CART_TOKEN_HEADER, required = false) String cartToken,
+            @RequestBody CartBatchRequest request) {
+        if (request.getOperations() == null || request.getOperations().isEmpty()) {
+            return ResponseEntity.badRequest().body("operations is required");
+        }
+        try {
+            if (usesGuestToken(userId)) {
+                return tokenResponse(guestCartTokens.applyBatch(cartToken, request.getOperations()));
+            }
+            Cart cart = cartService.applyBatch(sessionId, userId, request.getOperations());
+            return ResponseEntity.ok(CartView.of(cart));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    // Metrics for the abandoned guest cart sweeper
+    @GetMapping("/sweeper/stats")
+    public ResponseEntity<GuestCartSweeper.SweeperStats> getSweeperStats() {
+        return ResponseEntity.ok(guestCartSweeper.getStats());
+    }
+    
     // ADD THIS ENDPOINT FOR CART MIGRATION
     @PostMapping("/migrate")
     public ResponseEntity<Map<String, String>> migrateCart(
             @RequestHeader("X-Session-Id") String sessionId,
-            @RequestHeader("X-User-Id") Long userId) {
+            @RequestHeader("X-User-Id") Long userId,
+            @RequestHeader(value = CART_TOKEN_HEADER, required = false) String cartToken) {
         try {
             cartService.migrateGuestCartToUser(sessionId, userId);
             Map<String, String> response = new HashMap<>();
             response.put("message", "Cart migrated successfully");
+            if (guestCartTokens.isEnabled() && cartToken != null) {
+                // The token's lines are persisted now; an empty header tells the client to drop it
+                guestCartTokens.migrateToUser(cartToken, sessionId, userId);
+                return ResponseEntity.ok().header(CART_TOKEN_HEADER, "").body(response);
+            }
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
     
+    private boolean usesGuestToken(Long userId) {
+        return userId == null && guestCartTokens.isEnabled();
+    }
+    
+    private ResponseEntity<CartView> tokenResponse(GuestCartTokenService.TokenCart tokenCart) {
+        return ResponseEntity.ok().header(CART_TOKEN_HEADER, tokenCart.getToken()).body(CartView.of(tokenCart.getCart()));
+    }
+    
     // Request DTOs
     public static class AddToCartRequest {
         private Long productId;
@@ -131,4 +214,133 @@ public class CartController {
         public Integer getQuantity() { return quantity; }
         public void setQuantity(Integer quantity) { this.quantity = quantity; }
     }
-}
\ No newline at end of file
+    
+    public static class CartBatchRequest {
+        private List<CartOperation> operations;
+        
+        public List<CartOperation> getOperations() { return operations; }
+        public void setOperations(List<CartOperation> operations) { this.operations = operations; }
+    }
+    
+    // op is "add" (increase quantity), "update" (set quantity; 0 removes) or "remove"
+    public static class CartOperation {
+        public static final String ADD = "add";
+        public static final String UPDATE = "update";
+        public static final String REMOVE = "remove";
+        
+        private String op;
+        private Long productId;
+        private Integer quantity;
+        
+        // Getters and Setters
+        public String getOp() { return op; }
+        public void setOp(String op) { this.op = op; }
+        
+        public Long getProductId() { return productId; }
+        public void setProductId(Long productId) { this.productId = productId; }
+        
+        public Integer getQuantity() { return quantity; }
+        public void setQuantity(Integer quantity) { this.quantity = quantity; }
+    }
+    
+    // Response DTOs: only what the cart pages use, with totals computed here.
+    // Field names match the old entity JSON (cartItems, cartItemId, product.productId, ...).
+    public static class CartView {
+        private Long cartId;
+        private List<CartLineView> cartItems;
+        private int itemCount;
+        private double subtotal;
+        
+        public static CartView of(Cart cart) {
+            CartView view = new CartView();
+            view.cartId = cart.getCartId();
+            view.cartItems = new ArrayList<>(cart.getCartItems().size());
+            for (CartItem item : cart.getCartItems()) {
+                CartLineView line = CartLineView.of(item);
+                view.cartItems.add(line);
+                view.itemCount += line.quantity;
+                view.subtotal += line.lineTotal;
+            }
+            return view;
+        }
+        
+        public Long getCartId() { return cartId; }
+        public List<CartLineView> getCartItems() { return cartItems; }
+        public int getItemCount() { return itemCount; }
+        public double getSubtotal() { return subtotal; }
+    }
+    
+    public static class CartLineView {
+        private Long cartItemId;
+        private int quantity;
+        private double price;
+        private double lineTotal;
+        private CartProductView product;
+        
+        static CartLineView of(CartItem item) {
+            CartLineView line = new CartLineView();
+            line.cartItemId = item.getCartItemId();
+            line.quantity = item.getQuantity() != null ? item.getQuantity() : 0;
+            line.price = item.getPrice() != null ? item.getPrice() : 0;
+            line.lineTotal = line.price * line.quantity;
+            line.product = CartProductView.of(item.getProduct());
+            return line;
+        }
+        
+        public Long getCartItemId() { return cartItemId; }
+        public int getQuantity() { return quantity; }
+        public double getPrice() { return price; }
+        public double getLineTotal() { return lineTotal; }
+        public CartProductView getProduct() { return product; }
+    }
+    
+    public static class CartProductView {
+        private Long productId;
+        private String name;
+        private String category;
+        private String imageUrl;
+        private String thumbnailUrl;
+        private boolean available;
+        
+        static CartProductView of(Product product) {
+            CartProductView view = new CartProductView();
+            if (product != null) {
+                view.productId = product.getProductId();
+                view.name = product.getName();
+                view.category = product.getCategory();
+                view.imageUrl = product.getImageUrl();
+                view.thumbnailUrl = product.getThumbnailUrl();
+                view.available = !Boolean.FALSE.equals(product.getAvailable());
+            }
+            return view;
+        }
+        
+        public Long getProductId() { return productId; }
+        public String getName() { return name; }
+        public String getCategory() { return category; }
+        public String getImageUrl() { return imageUrl; }
+        public String getThumbnailUrl() { return thumbnailUrl; }
+        public boolean isAvailable() { return available; }
+    }
+    
+    public static class CartSummaryView {
+        private int lineCount;
+        private int itemCount;
+        private double subtotal;
+        
+        public static CartSummaryView of(Cart cart) {
+            CartSummaryView view = new CartSummaryView();
+            for (CartItem item : cart.getCartItems()) {
+                int quantity = item.getQuantity() != null ? item.getQuantity() : 0;
+                view.lineCount++;
+                view.itemCount += quantity;
+                view.subtotal += (item.getPrice() != null ? item.getPrice() : 0) * quantity;
+            }
+            return view;
+        }
+        
+        public int getLineCount() { return lineCount; }
+        public int getItemCount() { return itemCount; }
+        public double getSubtotal() { return subtotal; }
+    }
+}
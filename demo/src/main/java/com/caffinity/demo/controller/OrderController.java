@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Optional;
  
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -19,6 +20,7 @@ import org.springframework.web.bind.annotation.RestController;
 import com.caffinity.demo.entity.Order;
 import com.caffinity.demo.entity.OrderStatus;
 import com.caffinity.demo.entity.PaymentMethod;
+import com.caffinity.demo.service.OrderIdempotencyService;
 import com.caffinity.demo.service.OrderService;
  
 @RestController
@@ -26,14 +28,20 @@ import com.caffinity.demo.service.OrderService;
 @CrossOrigin(origins = "http://localhost:3000")
 public class OrderController {
  
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     @Autowired
     private OrderService orderService;
+
+    @Autowired
+    private OrderIdempotencyService idempotencyService;
  
     // NEW: Create order from frontend with customer info and order items
     @PostMapping
     public ResponseEntity<?> createOrder(
             @RequestHeader(value = "X-User-Id", required = false) Long userId,
             @RequestHeader(value = "X-Session-Id", required = false) String sessionId, // ADDED X-Session-Id
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
             @RequestBody CreateOrderRequest request) {
         try {
             System.out.println("🔄 Received order creation request from frontend for user: " + userId + " and session: " + sessionId);
@@ -74,9 +82,28 @@ public class OrderController {
                 System.out.println("⚠️ No payment method received from frontend");
             }
 
+            if (idempotencyKey != null) {
+                idempotencyKey = idempotencyKey.trim();
+                if (idempotencyKey.isEmpty() || idempotencyKey.length() > OrderIdempotencyService.MAX_KEY_LENGTH) {
+                    return ResponseEntity.badRequest().body("Idempotency-Key must be 1-" + OrderIdempotencyService.MAX_KEY_LENGTH + " characters");
+                }
+                // A retry of an order that already went through is answered without a new transaction
+                Long replayedOrderId = idempotencyService.findCompletedOrder(idempotencyKey,
+                        idempotencyService.fingerprint(userId, sessionId, request));
+                if (replayedOrderId != null) {
+                    System.out.println("🔁 Replaying order " + replayedOrderId + " for Idempotency-Key " + idempotencyKey);
+                    Optional<Order> replayed = orderService.getOrderByIdWithItems(replayedOrderId);
+                    if (replayed.isPresent()) {
+                        return ResponseEntity.ok(replayed.get());
+                    }
+                }
+            }
+
             // UPDATED: Pass sessionId to the service layer
-            Order order = orderService.createOrderFromFrontend(userId, sessionId, request);
+            Order order = orderService.createOrderFromFrontend(userId, sessionId, request, idempotencyKey);
             return ResponseEntity.ok(order);
+        } catch (OrderIdempotencyService.KeyReuseException e) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(e.getMessage());
         } catch (Exception e) {
             System.err.println("❌ Error creating order: " + e.getMessage());
             e.printStackTrace();
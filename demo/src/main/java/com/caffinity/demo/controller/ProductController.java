@@ -1,13 +1,26 @@
 package com.caffinity.demo.controller;
 
 import com.caffinity.demo.entity.Product;
+import com.caffinity.demo.service.ProductCatalogCache;
+import com.caffinity.demo.service.ProductCatalogRenderer;
+import com.caffinity.demo.service.ProductImportService;
 import com.caffinity.demo.service.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/products")
@@ -17,25 +30,77 @@ public class ProductController {
     @Autowired
     private ProductService productService;
     
+    // When enabled, the menu lists are written from pre-serialized byte arrays
+    @Value("${catalog.snapshot.enabled:true}")
+    private boolean snapshotEnabled;
+    
     @GetMapping
-    public List<Product> getAllProducts() {
-        return productService.getAllProducts();
+    public ResponseEntity<?> getAllProducts(WebRequest request) {
+        return catalogResponse(ProductCatalogRenderer.VIEW_ALL, request, ProductCatalogCache.Snapshot::getAll);
+    }
+    
+    // Multi-get: /api/products?ids=3,1,7 returns the products in that order plus any missing IDs
+    @GetMapping(params = "ids")
+    public ResponseEntity<?> getProductsByIds(@RequestParam("ids") List<Long> ids) {
+        try {
+            return ResponseEntity.ok(productService.getProductsByIds(ids));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    // Same as above for ID lists too long for a query string
+    @PostMapping("/lookup")
+    public ResponseEntity<?> lookupProducts(@RequestBody ProductLookupRequest request) {
+        if (request.getIds() == null) {
+            return ResponseEntity.badRequest().body("ids is required");
+        }
+        try {
+            return ResponseEntity.ok(productService.getProductsByIds(request.getIds()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
     
     @GetMapping("/coffee")
-    public List<Product> getCoffeeProducts() {
-        return productService.getCoffeeProducts();
+    public ResponseEntity<?> getCoffeeProducts(WebRequest request) {
+        return catalogResponse(ProductCatalogRenderer.VIEW_COFFEE, request, snapshot -> snapshot.getByType("coffee"));
     }
     
     @GetMapping("/desserts")
-    public List<Product> getDessertProducts() {
-        return productService.getDessertProducts();
+    public ResponseEntity<?> getDessertProducts(WebRequest request) {
+        return catalogResponse(ProductCatalogRenderer.VIEW_DESSERTS, request, snapshot -> snapshot.getByType("dessert"));
+    }
+    
+    // Keyset-paginated listing: /api/products/page?cursor=<nextCursor>&size=20&type=coffee
+    @GetMapping("/page")
+    public ResponseEntity<ProductService.ProductPage> getProductPage(
+            @RequestParam(value = "cursor", required = false) Long cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "category", required = false) String category,
+            @RequestParam(value = "minPrice", required = false) Double minPrice,
+            @RequestParam(value = "maxPrice", required = false) Double maxPrice) {
+        return ResponseEntity.ok(productService.getProductPage(cursor, size, type, category, minPrice, maxPrice));
+    }
+    
+    // Search-as-you-type over name, category and description: /api/products/search?q=cara
+    @GetMapping("/search")
+    public ResponseEntity<List<Product>> searchProducts(
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return ResponseEntity.ok(productService.searchProducts(query, limit));
     }
     
     @GetMapping("/{id}")
-    public ResponseEntity<Product> getProductById(@PathVariable Long id) {
-        Optional<Product> product = productService.getProductById(id);
-        return product.map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<Product> getProductById(@PathVariable Long id, WebRequest request) {
+        ProductCatalogCache.Snapshot snapshot = productService.getCatalogSnapshot();
+        if (request.checkNotModified(catalogETag("product-" + id, snapshot))) {
+            return null;
+        }
+        Optional<Product> product = Optional.ofNullable(snapshot.getById(id));
+        return product.map(p -> ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(p))
+                .orElse(ResponseEntity.notFound().build());
     }
     
     @PostMapping
@@ -56,12 +121,16 @@ public class ProductController {
             product.setCategory(category);
             
             // Handle image file upload
-            if (imageFile != null && !imageFile.isEmpty()) {
+            boolean newImage = imageFile != null && !imageFile.isEmpty();
+            if (newImage) {
                 String imageUrl = productService.saveImage(imageFile);
-                product.setImageUrl(imageUrl);
+                productService.useNewImage(product, imageUrl);
             }
             
             Product savedProduct = productService.saveProduct(product);
+            if (newImage) {
+                productService.scheduleImageVariants(savedProduct);
+            }
             return ResponseEntity.ok(savedProduct);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
@@ -78,7 +147,7 @@ public class ProductController {
             @RequestParam(value = "image", required = false) MultipartFile imageFile) {
         
         try {
-            Optional<Product> optionalProduct = productService.getProductById(id);
+            Optional<Product> optionalProduct = productService.getProductForUpdate(id);
             if (optionalProduct.isPresent()) {
                 Product product = optionalProduct.get();
                 product.setName(name);
@@ -87,12 +156,18 @@ public class ProductController {
                 product.setCategory(category);
                 
                 // Handle image file update
-                if (imageFile != null && !imageFile.isEmpty()) {
+                String previousImageUrl = product.getImageUrl();
+                boolean newImage = imageFile != null && !imageFile.isEmpty();
+                if (newImage) {
                     String imageUrl = productService.saveImage(imageFile);
-                    product.setImageUrl(imageUrl);
+                    productService.useNewImage(product, imageUrl);
                 }
                 
                 Product updatedProduct = productService.saveProduct(product);
+                if (newImage && !Objects.equals(previousImageUrl, updatedProduct.getImageUrl())) {
+                    productService.scheduleImageVariants(updatedProduct);
+                    productService.releaseImage(previousImageUrl);
+                }
                 return ResponseEntity.ok(updatedProduct);
             }
             return ResponseEntity.notFound().build();
@@ -101,9 +176,144 @@ public class ProductController {
         }
     }
     
+    // Bulk import: stream a CSV (with header row) or NDJSON body.
+    // Columns: name, description, price, type, category, imageUrl and optional productId (upsert).
+    @PostMapping(value = "/import", consumes = { "text/csv", "application/x-ndjson" })
+    public ResponseEntity<?> importProducts(
+            @RequestHeader("Content-Type") String contentType,
+            InputStream body) {
+        try {
+            boolean ndjson = contentType.toLowerCase().startsWith("application/x-ndjson");
+            ProductImportService.ImportResult result = productService.importProducts(body, ndjson);
+            // Stopped partway: the report still lists what was imported before the failure
+            if (result.getError() != null) {
+                return ResponseEntity.badRequest().body(result);
+            }
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error importing products: " + e.getMessage());
+        }
+    }
+    
+    // ?soft=true retires the product instead of deleting it
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteProduct(@PathVariable Long id) {
-        productService.deleteProduct(id);
-        return ResponseEntity.ok().build();
+    public ResponseEntity<?> deleteProduct(@PathVariable Long id,
+                                           @RequestParam(value = "soft", defaultValue = "false") boolean soft) {
+        try {
+            if (soft) {
+                productService.setProductAvailable(id, false);
+            } else {
+                productService.deleteProduct(id);
+            }
+            return ResponseEntity.ok().build();
+        } catch (DataIntegrityViolationException e) {
+            // Still referenced by order history
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body("Product has been ordered before and can't be deleted; retire it with ?soft=true instead");
+        } catch (ProductService.ProductNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (RuntimeException e) {
+            System.err.println("❌ Error deleting product " + id + ": " + e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    // Retire or restore a product
+    @PutMapping("/{id}/availability")
+    public ResponseEntity<?> setAvailability(@PathVariable Long id, @RequestBody AvailabilityRequest request) {
+        if (request.getAvailable() == null) {
+            return ResponseEntity.badRequest().body("available is required");
+        }
+        try {
+            productService.setProductAvailable(id, request.getAvailable());
+            return ResponseEntity.ok().build();
+        } catch (ProductService.ProductNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (RuntimeException e) {
+            System.err.println("❌ Error changing availability of product " + id + ": " + e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    // Catalog reads carry a strong ETag derived from the version of the snapshot being served.
+    // checkNotModified sets the ETag header and answers 304 when the client's copy is current,
+    // in which case Spring expects a null return value.
+    private ResponseEntity<?> catalogResponse(String view, WebRequest request,
+                                              Function<ProductCatalogCache.Snapshot, List<Product>> products) {
+        boolean gzip = snapshotEnabled && acceptsGzip(request);
+        ProductCatalogCache.Snapshot snapshot = productService.getCatalogSnapshot();
+        
+        // Each encoding is a different representation, so it gets its own ETag
+        if (request.checkNotModified(catalogETag(gzip ? view + "-gz" : view, snapshot))) {
+            return null;
+        }
+        
+        if (!snapshotEnabled) {
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(products.apply(snapshot));
+        }
+        
+        ProductCatalogRenderer.RenderedView rendered = productService.getRenderedCatalog(snapshot, view);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(rendered.getGzip());
+        }
+        return response.body(rendered.getJson());
+    }
+    
+    // gzip is acceptable when listed (or covered by "*") with a non-zero q-value; "gzip;q=0" refuses it
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzipQuality = null;
+        Double wildcardQuality = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase();
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim().toLowerCase();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzipQuality = quality;
+            } else if (name.equals("*")) {
+                wildcardQuality = quality;
+            }
+        }
+        Double quality = gzipQuality != null ? gzipQuality : wildcardQuality;
+        return quality != null && quality > 0;
+    }
+    
+    private boolean acceptsGzip(WebRequest request) {
+        return acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+    
+    private String catalogETag(String view, ProductCatalogCache.Snapshot snapshot) {
+        return "\"" + view + "-" + productService.getCatalogTag(snapshot) + "\"";
+    }
+    
+    // Request DTOs
+    public static class ProductLookupRequest {
+        private List<Long> ids;
+        
+        public List<Long> getIds() { return ids; }
+        public void setIds(List<Long> ids) { this.ids = ids; }
+    }
+    
+    public static class AvailabilityRequest {
+        private Boolean available;
+        
+        public Boolean getAvailable() { return available; }
+        public void setAvailable(Boolean available) { this.available = available; }
     }
-}
\ No newline at end of file
+}
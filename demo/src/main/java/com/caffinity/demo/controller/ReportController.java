@@ -0,0 +1,69 @@
+package com.caffinity.demo.controller;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.caffinity.demo.entity.SalesGranularity;
+import com.caffinity.demo.service.SalesRollupService;
+
+@RestController
+@RequestMapping("/api/reports")
+@CrossOrigin(origins = "http://localhost:3000")
+public class ReportController {
+
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    // Sales chart data read from the hourly/daily rollups, e.g.
+    // /api/reports/sales?from=2025-01-01&to=2025-12-31&granularity=day
+    // from/to take a date or a date-time; a plain "to" date includes that whole day.
+    @GetMapping("/sales")
+    public ResponseEntity<?> getSales(
+            @RequestParam String from,
+            @RequestParam String to,
+            @RequestParam(defaultValue = "DAY") String granularity,
+            @RequestParam(required = false) Long productId) {
+        try {
+            SalesGranularity parsedGranularity = parseGranularity(granularity);
+            LocalDateTime start = parseTime(from, false);
+            LocalDateTime end = parseTime(to, true);
+            return ResponseEntity.ok(salesRollupService.getSalesReport(start, end, parsedGranularity, productId));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            System.err.println("❌ Error building sales report: " + e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    private static SalesGranularity parseGranularity(String value) {
+        switch (value.trim().toUpperCase()) {
+            case "HOUR":
+            case "HOURLY":
+                return SalesGranularity.HOUR;
+            case "DAY":
+            case "DAILY":
+                return SalesGranularity.DAY;
+            default:
+                throw new IllegalArgumentException("granularity must be hour or day");
+        }
+    }
+
+    private static LocalDateTime parseTime(String value, boolean endOfRange) {
+        String trimmed = value.trim();
+        if (trimmed.length() == 10) {
+            LocalDate date = LocalDate.parse(trimmed);
+            return (endOfRange ? date.plusDays(1) : date).atStartOfDay();
+        }
+        return LocalDateTime.parse(trimmed);
+    }
+}
@@ -2,7 +2,10 @@ package com.caffinity.demo.entity;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
@@ -10,13 +13,18 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 
 @Entity
-@Table(name = "carts")
+@Table(name = "carts", indexes = {
+    // Lets the guest cart sweeper find idle carts without scanning the table
+    @Index(name = "idx_carts_user_updated", columnList = "user_id, updated_at")
+})
 public class Cart {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -38,6 +46,12 @@ public class Cart {
     
     private LocalDateTime updatedAt;
     
+    // productId -> item, built on first lookup and kept in step by the helper methods below.
+    // The list is only exposed read-only, so those helpers and setCartItems are the only way
+    // to change it; each of them updates or drops this index.
+    @Transient
+    private Map<Long, CartItem> itemsByProductId;
+    
     // Constructors
     public Cart() {
         this.createdAt = LocalDateTime.now();
@@ -63,8 +77,12 @@ public class Cart {
     public String getSessionId() { return sessionId; }
     public void setSessionId(String sessionId) { this.sessionId = sessionId; }
     
-    public List<CartItem> getCartItems() { return cartItems; }
-    public void setCartItems(List<CartItem> cartItems) { this.cartItems = cartItems; }
+    // Read-only: change the items through the helper methods so the product index stays in step
+    public List<CartItem> getCartItems() { return Collections.unmodifiableList(cartItems); }
+    public void setCartItems(List<CartItem> cartItems) {
+        this.cartItems = cartItems;
+        this.itemsByProductId = null;
+    }
 
     public User getUser() { return user; }
     public void setUser(User user) { this.user = user; }
@@ -79,15 +97,45 @@ public class Cart {
     public void addCartItem(CartItem cartItem) {
         cartItems.add(cartItem);
         cartItem.setCart(this);
+        if (itemsByProductId != null) {
+            // First line wins, as in a rebuild
+            itemsByProductId.putIfAbsent(productIdOf(cartItem), cartItem);
+        }
         this.updatedAt = LocalDateTime.now();
     }
     
     public void removeCartItem(CartItem cartItem) {
         cartItems.remove(cartItem);
         cartItem.setCart(null);
+        // uk_cart_items_cart_product means there is no other line for this product to fall back to
+        if (itemsByProductId != null) {
+            itemsByProductId.remove(productIdOf(cartItem), cartItem);
+        }
+        this.updatedAt = LocalDateTime.now();
+    }
+    
+    public void clearCartItems() {
+        cartItems.clear();
+        itemsByProductId = null;
         this.updatedAt = LocalDateTime.now();
     }
     
+    // The cart line for a product, or null
+    public CartItem findCartItem(Long productId) {
+        if (itemsByProductId == null) {
+            Map<Long, CartItem> index = new HashMap<>();
+            for (CartItem item : cartItems) {
+                index.putIfAbsent(productIdOf(item), item);
+            }
+            itemsByProductId = index;
+        }
+        return itemsByProductId.get(productId);
+    }
+    
+    private static Long productIdOf(CartItem item) {
+        return item.getProduct() != null ? item.getProduct().getProductId() : null;
+    }
+    
     public Double getTotalPrice() {
         return cartItems.stream()
                 .mapToDouble(CartItem::getTotal)
@@ -0,0 +1,66 @@
+package com.caffinity.demo.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+// One row per Idempotency-Key seen on POST /api/orders. The row is inserted in the same
+// transaction as the order, so it only survives if the order does.
+@Entity
+@Table(name = "order_idempotency_keys",
+       indexes = @Index(name = "idx_order_idempotency_created", columnList = "created_at"))
+public class OrderIdempotencyKey {
+    @Id
+    @Column(name = "idempotency_key", length = 100)
+    private String idempotencyKey;
+
+    // SHA-256 of the caller and request body, to catch a key reused for a different order
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    // Set before the claiming transaction commits
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public OrderIdempotencyKey() {
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public void setRequestHash(String requestHash) {
+        this.requestHash = requestHash;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
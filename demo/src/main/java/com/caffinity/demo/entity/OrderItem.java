@@ -10,12 +10,16 @@ import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
 
 @Entity
 @Table(name = "order_items")
 public class OrderItem {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Ids come in blocks of 50 from id_allocations, so inserts can be batched (see IdAllocationInitializer)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "order_items_id")
+    @TableGenerator(name = "order_items_id", table = "id_allocations", pkColumnName = "sequence_name",
+                    valueColumnName = "next_val", pkColumnValue = "order_items", allocationSize = 50)
     @Column(name = "order_item_id")
     private Long orderItemId;
     
@@ -0,0 +1,66 @@
+package com.caffinity.demo.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+// Last saved copy of the in-memory order counters, one row per status.
+// Written periodically by OrderStatisticsTracker and read back at startup.
+@Entity
+@Table(name = "order_statistics_checkpoints")
+public class OrderStatisticsCheckpoint {
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 32)
+    private OrderStatus status;
+
+    @Column(name = "order_count", nullable = false)
+    private long orderCount;
+
+    // Sum of total_amount for orders in this status, in cents
+    @Column(name = "amount_cents", nullable = false)
+    private long amountCents;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public OrderStatisticsCheckpoint() {
+    }
+
+    public OrderStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(OrderStatus status) {
+        this.status = status;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public void setOrderCount(long orderCount) {
+        this.orderCount = orderCount;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public void setAmountCents(long amountCents) {
+        this.amountCents = amountCents;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
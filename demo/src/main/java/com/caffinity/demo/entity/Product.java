@@ -3,7 +3,10 @@ package com.caffinity.demo.entity;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+    // Supports filtered keyset pagination (type/category + product_id order)
+    @Index(name = "idx_products_type_category", columnList = "type, category, product_id")
+})
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -26,6 +29,17 @@ public class Product {
     
     private String imageUrl;
     
+    // Resized variants of imageUrl, filled in asynchronously after upload
+    @Column(name = "thumbnail_url")
+    private String thumbnailUrl;
+    
+    @Column(name = "medium_url")
+    private String mediumUrl;
+    
+    // Retired products stay in the catalog but can't be added to carts or ordered
+    @Column(nullable = false, columnDefinition = "BIT(1) DEFAULT 1")
+    private Boolean available = true;
+    
     // Constructors
     public Product() {}
     
@@ -59,4 +73,13 @@ public class Product {
     
     public String getImageUrl() { return imageUrl; }
     public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
+    
+    public String getThumbnailUrl() { return thumbnailUrl; }
+    public void setThumbnailUrl(String thumbnailUrl) { this.thumbnailUrl = thumbnailUrl; }
+    
+    public String getMediumUrl() { return mediumUrl; }
+    public void setMediumUrl(String mediumUrl) { this.mediumUrl = mediumUrl; }
+    
+    public Boolean getAvailable() { return available; }
+    public void setAvailable(Boolean available) { this.available = available; }
 }
\ No newline at end of file
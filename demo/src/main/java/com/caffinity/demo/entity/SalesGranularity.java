@@ -0,0 +1,6 @@
+package com.caffinity.demo.entity;
+
+public enum SalesGranularity {
+    HOUR,   // bucket_start is the start of the hour
+    DAY     // bucket_start is midnight
+}
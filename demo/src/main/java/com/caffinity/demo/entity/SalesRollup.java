@@ -0,0 +1,83 @@
+package com.caffinity.demo.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+// Completed-order sales per product per hour and per day, bucketed by order date.
+// Rows are written by SalesRollupService with native upserts.
+@Entity
+@Table(name = "sales_rollups",
+       uniqueConstraints = @UniqueConstraint(name = "uk_sales_rollups_bucket",
+                                             columnNames = {"granularity", "product_id", "bucket_start"}),
+       indexes = @Index(name = "idx_sales_rollups_bucket_start", columnList = "bucket_start"))
+public class SalesRollup {
+
+    // product_id of the row holding whole-order totals for a bucket
+    public static final long ALL_PRODUCTS = 0L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "rollup_id")
+    private Long rollupId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "granularity", nullable = false, length = 8)
+    private SalesGranularity granularity;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    // Plain column rather than a relation: 0 means all products, and deleted products keep their history
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "order_count", nullable = false)
+    private long orderCount;
+
+    @Column(name = "units", nullable = false)
+    private long units;
+
+    @Column(name = "revenue", nullable = false)
+    private double revenue;
+
+    public SalesRollup() {
+    }
+
+    public Long getRollupId() {
+        return rollupId;
+    }
+
+    public SalesGranularity getGranularity() {
+        return granularity;
+    }
+
+    public LocalDateTime getBucketStart() {
+        return bucketStart;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+}
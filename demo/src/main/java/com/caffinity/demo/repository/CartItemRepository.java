@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.caffinity.demo.entity.CartItem;
 
@@ -23,7 +24,7 @@ public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     // NEW METHODS FOR BUG FIX
     @Modifying
     @Query("DELETE FROM CartItem ci WHERE ci.product.productId = :productId")
-    void deleteByProductId(@Param("productId") Long productId);
+    int deleteByProductId(@Param("productId") Long productId);
     
     @Query("SELECT ci FROM CartItem ci WHERE ci.product.productId = :productId")
     List<CartItem> findByProductId(@Param("productId") Long productId);
@@ -40,6 +41,39 @@ public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     @Query("DELETE FROM CartItem ci WHERE ci.cartItemId = :cartItemId")
     void deleteByCartItemId(@Param("cartItemId") Long cartItemId);
     
+    // Add a product to a cart, or add to the quantity of its existing line.
+    // Relies on the unique (cart_id, product_id) key; the line keeps its original price.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Transactional
+    @Query(value = "INSERT INTO cart_items (cart_id, product_id, quantity, price) " +
+            "VALUES (:cartId, :productId, :quantity, :price) " +
+            "ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity)", nativeQuery = true)
+    int upsertQuantity(@Param("cartId") Long cartId, @Param("productId") Long productId,
+                       @Param("quantity") Integer quantity, @Param("price") Double price);
+    
+    // Like upsertQuantity, but an existing line only grows to the given quantity, so repeating it is harmless
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Transactional
+    @Query(value = "INSERT INTO cart_items (cart_id, product_id, quantity, price) " +
+            "VALUES (:cartId, :productId, :quantity, :price) " +
+            "ON DUPLICATE KEY UPDATE quantity = GREATEST(quantity, VALUES(quantity))", nativeQuery = true)
+    int upsertAtLeastQuantity(@Param("cartId") Long cartId, @Param("productId") Long productId,
+                              @Param("quantity") Integer quantity, @Param("price") Double price);
+    
+    // Copy every line of one cart into another, adding quantities where both have the product
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO cart_items (cart_id, product_id, quantity, price) " +
+            "SELECT * FROM (SELECT :targetCartId AS cart_id, product_id, quantity, price " +
+            "FROM cart_items WHERE cart_id = :sourceCartId) AS source " +
+            "ON DUPLICATE KEY UPDATE quantity = cart_items.quantity + source.quantity", nativeQuery = true)
+    int mergeCartItems(@Param("sourceCartId") Long sourceCartId, @Param("targetCartId") Long targetCartId);
+    
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM cart_items WHERE cart_id = :cartId", nativeQuery = true)
+    int deleteAllByCartId(@Param("cartId") Long cartId);
+    
     // Find cart items by multiple cart item IDs
     @Query("SELECT ci FROM CartItem ci WHERE ci.cartItemId IN :cartItemIds")
     List<CartItem> findByCartItemIds(@Param("cartItemIds") List<Long> cartItemIds);
@@ -1,9 +1,11 @@
 package com.caffinity.demo.repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -14,6 +16,8 @@ import com.caffinity.demo.entity.Cart;
 import com.caffinity.demo.entity.CartItem;
 import com.caffinity.demo.entity.User;
 
+import jakarta.persistence.LockModeType;
+
 @Repository
 public interface CartRepository extends JpaRepository<Cart, Long> {
     Optional<Cart> findBySessionId(String sessionId);
@@ -73,6 +77,40 @@ public interface CartRepository extends JpaRepository<Cart, Long> {
     @Query("SELECT c FROM Cart c LEFT JOIN FETCH c.cartItems WHERE c.user.userId = :userId")
     Optional<Cart> findByUserIdWithItems(@Param("userId") Long userId);
     
+    @Query("SELECT c FROM Cart c LEFT JOIN FETCH c.cartItems WHERE c.cartId = :cartId")
+    Optional<Cart> findByCartIdWithItems(@Param("cartId") Long cartId);
+    
+    // Create the session's cart unless it already exists (session_id is unique)
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO carts (session_id, user_id, created_at, updated_at) " +
+            "VALUES (:sessionId, :userId, :now, :now) " +
+            "ON DUPLICATE KEY UPDATE session_id = session_id", nativeQuery = true)
+    int insertIfAbsent(@Param("sessionId") String sessionId, @Param("userId") Long userId, @Param("now") LocalDateTime now);
+    
+    // Locking read: sees the latest committed row, not the transaction's snapshot
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Transactional
+    @Query("SELECT c FROM Cart c LEFT JOIN FETCH c.cartItems WHERE c.sessionId = :sessionId")
+    Optional<Cart> findBySessionIdForUpdate(@Param("sessionId") String sessionId);
+    
+    // Guest-to-user merge. The SELECT ... FOR UPDATE reads see the latest committed rows.
+    @Query(value = "SELECT cart_id FROM carts WHERE session_id = :sessionId AND user_id IS NULL FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockGuestCartId(@Param("sessionId") String sessionId);
+    
+    @Query(value = "SELECT cart_id FROM carts WHERE user_id = :userId ORDER BY cart_id LIMIT 1 FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockUserCartId(@Param("userId") Long userId);
+    
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE carts SET user_id = :userId, updated_at = :now WHERE cart_id = :cartId", nativeQuery = true)
+    int assignUser(@Param("cartId") Long cartId, @Param("userId") Long userId, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE carts SET updated_at = :now WHERE cart_id = :cartId", nativeQuery = true)
+    int touch(@Param("cartId") Long cartId, @Param("now") LocalDateTime now);
+    
     // NEW: Check if user has a cart
     @Query("SELECT COUNT(c) > 0 FROM Cart c WHERE c.user.userId = :userId")
     boolean existsByUserId(@Param("userId") Long userId);
@@ -0,0 +1,46 @@
+package com.caffinity.demo.repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.caffinity.demo.entity.OrderIdempotencyKey;
+
+import jakarta.persistence.LockModeType;
+
+@Repository
+public interface OrderIdempotencyKeyRepository extends JpaRepository<OrderIdempotencyKey, String> {
+
+    @Query("SELECT k FROM OrderIdempotencyKey k WHERE k.idempotencyKey = :idempotencyKey")
+    Optional<OrderIdempotencyKey> findByIdempotencyKey(@Param("idempotencyKey") String idempotencyKey);
+
+    // Locking read: sees the row committed by whoever claimed the key first, not this transaction's snapshot
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT k FROM OrderIdempotencyKey k WHERE k.idempotencyKey = :idempotencyKey")
+    Optional<OrderIdempotencyKey> findByIdempotencyKeyForUpdate(@Param("idempotencyKey") String idempotencyKey);
+
+    // Returns 1 when this transaction now owns the key and 0 when it already existed.
+    // INSERT IGNORE rather than ON DUPLICATE KEY UPDATE: the connection reports found rows, so a
+    // no-op update would also count as 1. A concurrent claim of the same key waits here until
+    // the first transaction finishes.
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO order_idempotency_keys (idempotency_key, request_hash, created_at) " +
+                   "VALUES (:idempotencyKey, :requestHash, NOW())", nativeQuery = true)
+    int claim(@Param("idempotencyKey") String idempotencyKey, @Param("requestHash") String requestHash);
+
+    @Modifying
+    @Query("UPDATE OrderIdempotencyKey k SET k.orderId = :orderId WHERE k.idempotencyKey = :idempotencyKey")
+    int attachOrder(@Param("idempotencyKey") String idempotencyKey, @Param("orderId") Long orderId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OrderIdempotencyKey k WHERE k.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
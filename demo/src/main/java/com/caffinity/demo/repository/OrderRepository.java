@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -13,6 +14,8 @@ import com.caffinity.demo.entity.Order;
 import com.caffinity.demo.entity.OrderStatus;
 import com.caffinity.demo.entity.User;
 
+import jakarta.persistence.LockModeType;
+
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
     
@@ -57,10 +60,20 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     @Query("SELECT COALESCE(SUM(o.totalAmount), 0) FROM Order o WHERE o.status = com.caffinity.demo.entity.OrderStatus.COMPLETED")
     Double getTotalRevenue();
     
+    // Count and amount per status in one pass: [status, count, sum(totalAmount)]
+    @Query("SELECT o.status, COUNT(o), COALESCE(SUM(o.totalAmount), 0) FROM Order o GROUP BY o.status")
+    List<Object[]> summarizeByStatus();
+    
     // CUSTOM METHODS FOR CUSTOM FIELD NAMES
     @Query("SELECT o FROM Order o WHERE o.orderId = :orderId")
     Optional<Order> findByOrderId(@Param("orderId") Long orderId);
     
+    // Locking read for status transitions: a second transition of the same order waits here and
+    // then sees the committed status, so the previous status it reports is never stale
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.orderId = :orderId")
+    Optional<Order> findByOrderIdForUpdate(@Param("orderId") Long orderId);
+    
     @Query("SELECT CASE WHEN COUNT(o) > 0 THEN true ELSE false END FROM Order o WHERE o.orderId = :orderId")
     boolean existsByOrderId(@Param("orderId") Long orderId);
     
@@ -0,0 +1,11 @@
+package com.caffinity.demo.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.caffinity.demo.entity.OrderStatisticsCheckpoint;
+import com.caffinity.demo.entity.OrderStatus;
+
+@Repository
+public interface OrderStatisticsCheckpointRepository extends JpaRepository<OrderStatisticsCheckpoint, OrderStatus> {
+}
@@ -1,11 +1,13 @@
 package com.caffinity.demo.repository;
 
 import com.caffinity.demo.entity.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,8 +28,52 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     @Query("SELECT p FROM Product p WHERE p.productId IN :productIds")
     List<Product> findByProductIds(@Param("productIds") List<Long> productIds);
 
+    // Keyset (seek) page: rows after the cursor in product ID order, with optional filters.
+    // Pass PageRequest.of(0, n) to limit the page size; no count query is issued.
+    @Query("SELECT p FROM Product p WHERE p.productId > :afterId " +
+           "AND (:type IS NULL OR p.type = :type) " +
+           "AND (:category IS NULL OR p.category = :category) " +
+           "AND (:minPrice IS NULL OR p.price >= :minPrice) " +
+           "AND (:maxPrice IS NULL OR p.price <= :maxPrice) " +
+           "ORDER BY p.productId ASC")
+    List<Product> findPageAfter(@Param("afterId") Long afterId,
+                                @Param("type") String type,
+                                @Param("category") String category,
+                                @Param("minPrice") Double minPrice,
+                                @Param("maxPrice") Double maxPrice,
+                                Pageable pageable);
+
+    // Attach generated image variants, but only if the product still uses the same original image
+    @Modifying
+    @Transactional
+    @Query("UPDATE Product p SET p.thumbnailUrl = :thumbnailUrl, p.mediumUrl = :mediumUrl " +
+           "WHERE p.productId = :productId AND p.imageUrl = :imageUrl")
+    int updateImageVariants(@Param("productId") Long productId,
+                            @Param("imageUrl") String imageUrl,
+                            @Param("thumbnailUrl") String thumbnailUrl,
+                            @Param("mediumUrl") String mediumUrl);
+
+    // How many products still reference a stored image, whatever host or prefix their URL uses.
+    // fileNamePattern is the file name with LIKE wildcards escaped by '!'.
+    @Query("SELECT COUNT(p) FROM Product p WHERE p.imageUrl LIKE CONCAT('%/uploads/', :fileNamePattern) ESCAPE '!'")
+    long countByImageFileName(@Param("fileNamePattern") String fileNamePattern);
+
+    // Products whose image variants have not been generated yet
+    @Query("SELECT p FROM Product p WHERE p.imageUrl IS NOT NULL AND p.thumbnailUrl IS NULL")
+    List<Product> findMissingImageVariants();
+
+    // Same, limited to the given products (e.g. rows just rewritten by an import)
+    @Query("SELECT p FROM Product p WHERE p.productId IN :productIds AND p.imageUrl IS NOT NULL AND p.thumbnailUrl IS NULL")
+    List<Product> findMissingImageVariantsByIds(@Param("productIds") List<Long> productIds);
+
     // Add this to ProductRepository.java:
     @Modifying
     @Query("DELETE FROM Product p WHERE p.productId = :productId")
     void deleteByProductId(@Param("productId") Long productId);
+    
+    // Soft delete / restore without touching cart_items
+    @Modifying
+    @Transactional
+    @Query("UPDATE Product p SET p.available = :available WHERE p.productId = :productId")
+    int updateAvailability(@Param("productId") Long productId, @Param("available") boolean available);
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.caffinity.demo.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.caffinity.demo.entity.SalesGranularity;
+import com.caffinity.demo.entity.SalesRollup;
+
+@Repository
+public interface SalesRollupRepository extends JpaRepository<SalesRollup, Long> {
+
+    // Range scan on the (granularity, product_id, bucket_start) key
+    @Query("SELECT r FROM SalesRollup r WHERE r.granularity = :granularity AND r.productId = :productId " +
+           "AND r.bucketStart >= :from AND r.bucketStart < :to ORDER BY r.bucketStart")
+    List<SalesRollup> findSeries(@Param("granularity") SalesGranularity granularity,
+                                 @Param("productId") Long productId,
+                                 @Param("from") LocalDateTime from,
+                                 @Param("to") LocalDateTime to);
+}
@@ -1,12 +1,21 @@
 package com.caffinity.demo.service;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.caffinity.demo.controller.CartController;
 import com.caffinity.demo.entity.Cart;
 import com.caffinity.demo.entity.CartItem;
 import com.caffinity.demo.entity.Product;
@@ -31,8 +40,41 @@ public class CartService {
     @Autowired
     private UserRepository userRepository;
     
-    // UPDATED: Handle both guest and authenticated users
+    @Autowired
+    private CartWriteBehindStore cartStore;
+    
+    @Autowired
+    private ProductCatalogCache catalogCache;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    private static final int MAX_BATCH_OPERATIONS = 100;
+    private static final int CART_LOCK_STRIPES = 256;
+    
+    // Serialises mutations of the same cart within this instance without holding DB row locks.
+    // A fixed set of stripes keyed by user/session, so memory doesn't grow with the number of carts.
+    private final ReentrantLock[] cartLocks = new ReentrantLock[CART_LOCK_STRIPES];
+    
+    {
+        for (int i = 0; i < cartLocks.length; i++) {
+            cartLocks[i] = new ReentrantLock();
+        }
+    }
+    
+    // With the write-behind store enabled, cart reads and edits are served from memory.
+    // Loading into the store takes the cart's stripe, so it can't cache a copy that a direct
+    // database write (batch, merge, clear) is in the middle of changing.
     public Cart getOrCreateCart(String sessionId, Long userId) {
+        if (cartStore.isEnabled()) {
+            return withCartLock(sessionId, userId,
+                    () -> cartStore.read(sessionId, userId, () -> loadOrCreateCart(sessionId, userId)));
+        }
+        return loadOrCreateCart(sessionId, userId);
+    }
+    
+    // UPDATED: Handle both guest and authenticated users
+    private Cart loadOrCreateCart(String sessionId, Long userId) {
         User user = null;
         if (userId != null) {
             user = userRepository.findByUserId(userId).orElse(null);
@@ -58,66 +100,140 @@ public class CartService {
             return cart;
         }
         
-        // Create new cart
-        Cart newCart = new Cart(sessionId, user);
-        return cartRepository.save(newCart);
+        // Create new cart. The insert is a no-op if another request created this session's cart
+        // first (session_id is unique), and the locking read sees that row even when it was
+        // committed after our transaction started.
+        LocalDateTime now = LocalDateTime.now();
+        cartRepository.insertIfAbsent(sessionId, user != null ? user.getUserId() : null, now);
+        return cartRepository.findBySessionIdForUpdate(sessionId)
+                .orElseThrow(() -> new RuntimeException("Cart could not be created for session " + sessionId));
+    }
+    
+    // Runs a cart mutation while holding the in-process lock stripe(s) for the cart's owner.
+    // The lock is taken outside the transaction, so the next request for the same cart
+    // only starts once this one has committed.
+    // When both ids are present either one can resolve to the cart (user first, then session),
+    // so hold both stripes; otherwise a guest-keyed request could race a user-keyed one.
+    private <T> T withCartLock(String sessionId, Long userId, Supplier<T> action) {
+        if (userId != null && sessionId != null) {
+            return withCartLocks(action, lockKey(sessionId, null), lockKey(null, userId));
+        }
+        return withCartLocks(action, lockKey(sessionId, userId));
+    }
+    
+    private <T> T withCartLocks(Supplier<T> action, String... keys) {
+        // Always lock stripes in index order so two multi-key callers can't deadlock
+        int[] stripes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            stripes[i] = stripeFor(keys[i]);
+        }
+        Arrays.sort(stripes);
+        int locked = 0;
+        try {
+            for (int i = 0; i < stripes.length; i++) {
+                if (i > 0 && stripes[i] == stripes[i - 1]) {
+                    continue;
+                }
+                cartLocks[stripes[i]].lock();
+                locked = i + 1;
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                if (i > 0 && stripes[i] == stripes[i - 1]) {
+                    continue;
+                }
+                cartLocks[stripes[i]].unlock();
+            }
+        }
+    }
+    
+    private int stripeFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % cartLocks.length;
+    }
+    
+    private static String lockKey(String sessionId, Long userId) {
+        return userId != null ? "user:" + userId : "session:" + sessionId;
     }
     
-    @Transactional
     public Cart addToCart(String sessionId, Long productId, Integer quantity, Long userId) {
-        Cart cart = getOrCreateCart(sessionId, userId);
+        if (cartStore.isEnabled()) {
+            Product product = catalogCache.get().getById(productId);
+            if (product == null) {
+                throw new RuntimeException("Product not found");
+            }
+            if (Boolean.FALSE.equals(product.getAvailable())) {
+                throw new RuntimeException("Product is no longer available");
+            }
+            return withCartLock(sessionId, userId,
+                    () -> cartStore.add(sessionId, userId, () -> loadOrCreateCart(sessionId, userId), product, quantity));
+        }
+        return withCartLock(sessionId, userId,
+                () -> transactionTemplate.execute(status -> addToCartInDatabase(sessionId, productId, quantity, userId)));
+    }
+    
+    private Cart addToCartInDatabase(String sessionId, Long productId, Integer quantity, Long userId) {
+        Cart cart = loadOrCreateCart(sessionId, userId);
         Product product = productRepository.findByProductId(productId)
                 .orElseThrow(() -> new RuntimeException("Product not found"));
-        
-        // Check if item already exists in cart
-        Optional<CartItem> existingItem = cart.getCartItems().stream()
-                .filter(item -> item.getProduct().getProductId().equals(productId))
-                .findFirst();
-        
-        if (existingItem.isPresent()) {
-            // Update quantity
-            CartItem item = existingItem.get();
-            item.setQuantity(item.getQuantity() + quantity);
-            cartItemRepository.save(item);
-        } else {
-            // Add new item
-            CartItem newItem = new CartItem(product, quantity, product.getPrice());
-            cart.addCartItem(newItem);
-            cartItemRepository.save(newItem);
+        if (Boolean.FALSE.equals(product.getAvailable())) {
+            throw new RuntimeException("Product is no longer available");
         }
         
-        return cartRepository.save(cart);
+        // Insert the line or add to its quantity in one statement. The unique (cart_id, product_id)
+        // key keeps this correct even against writers the in-process lock doesn't cover.
+        cart.setUpdatedAt(LocalDateTime.now());
+        cartItemRepository.upsertQuantity(cart.getCartId(), productId, quantity, product.getPrice());
+        
+        return cartRepository.findByCartIdWithItems(cart.getCartId())
+                .orElseThrow(() -> new RuntimeException("Cart not found"));
     }
     
-    @Transactional
     public Cart updateCartItem(String sessionId, Long productId, Integer quantity, Long userId) {
-        Cart cart = getOrCreateCart(sessionId, userId);
-        
+        if (cartStore.isEnabled()) {
+            return withCartLock(sessionId, userId,
+                    () -> cartStore.update(sessionId, userId, () -> loadOrCreateCart(sessionId, userId), productId, quantity));
+        }
+        return withCartLock(sessionId, userId,
+                () -> transactionTemplate.execute(status -> updateCartItemInDatabase(sessionId, productId, quantity, userId)));
+    }
+    
+    private Cart updateCartItemInDatabase(String sessionId, Long productId, Integer quantity, Long userId) {
         if (quantity <= 0) {
-            return removeFromCart(sessionId, productId, userId);
+            return removeFromCartInDatabase(sessionId, productId, userId);
         }
         
-        Optional<CartItem> existingItem = cart.getCartItems().stream()
-                .filter(item -> item.getProduct().getProductId().equals(productId))
-                .findFirst();
+        Cart cart = loadOrCreateCart(sessionId, userId);
+        
+        Optional<CartItem> existingItem = Optional.ofNullable(cart.findCartItem(productId));
         
         if (existingItem.isPresent()) {
             CartItem item = existingItem.get();
             item.setQuantity(quantity);
             cartItemRepository.save(item);
+            // updatedAt drives guest cart expiry, so every change has to touch it
+            cart.setUpdatedAt(LocalDateTime.now());
             return cartRepository.save(cart);
         }
         
         throw new RuntimeException("Cart item not found");
     }
     
-    @Transactional
     public Cart removeFromCart(String sessionId, Long productId, Long userId) {
-        Cart cart = getOrCreateCart(sessionId, userId);
+        if (cartStore.isEnabled()) {
+            return withCartLock(sessionId, userId,
+                    () -> cartStore.remove(sessionId, userId, () -> loadOrCreateCart(sessionId, userId), productId));
+        }
+        return withCartLock(sessionId, userId,
+                () -> transactionTemplate.execute(status -> removeFromCartInDatabase(sessionId, productId, userId)));
+    }
+    
+    private Cart removeFromCartInDatabase(String sessionId, Long productId, Long userId) {
+        Cart cart = loadOrCreateCart(sessionId, userId);
         
-        Optional<CartItem> itemToRemove = cart.getCartItems().stream()
-                .filter(item -> item.getProduct().getProductId().equals(productId))
-                .findFirst();
+        Optional<CartItem> itemToRemove = Optional.ofNullable(cart.findCartItem(productId));
         
         if (itemToRemove.isPresent()) {
             CartItem item = itemToRemove.get();
@@ -129,61 +245,171 @@ public class CartService {
         throw new RuntimeException("Cart item not found");
     }
     
-    @Transactional
+    // Apply an ordered list of add/update/remove operations with one cart load and one flush.
+    // If any operation fails, none of them are applied.
+    public Cart applyBatch(String sessionId, Long userId, List<CartController.CartOperation> operations) {
+        if (operations.size() > MAX_BATCH_OPERATIONS) {
+            throw new RuntimeException("At most " + MAX_BATCH_OPERATIONS + " operations per batch");
+        }
+        // The batch is written directly, so start from the database copy of the cart. The evict
+        // happens under the stripe, so the store can't reload the cart until the batch has committed.
+        return withCartLock(sessionId, userId, () -> {
+            cartStore.flushAndEvict(sessionId, userId);
+            return transactionTemplate.execute(status -> applyBatchInDatabase(sessionId, userId, operations));
+        });
+    }
+    
+    private Cart applyBatchInDatabase(String sessionId, Long userId, List<CartController.CartOperation> operations) {
+        Cart cart = loadOrCreateCart(sessionId, userId);
+        
+        // Load every product the batch adds in one query
+        List<Long> addedIds = new ArrayList<>();
+        for (CartController.CartOperation operation : operations) {
+            if (CartController.CartOperation.ADD.equals(operation.getOp()) && operation.getProductId() != null) {
+                addedIds.add(operation.getProductId());
+            }
+        }
+        Map<Long, Product> products = new HashMap<>();
+        if (!addedIds.isEmpty()) {
+            for (Product product : productRepository.findByProductIds(addedIds)) {
+                products.put(product.getProductId(), product);
+            }
+        }
+        
+        // Lines removed earlier in the batch. Re-adding one reuses its row: a new CartItem would be
+        // inserted on save, before the orphan delete, and collide on uk_cart_items_cart_product.
+        Map<Long, CartItem> removedItems = new HashMap<>();
+        
+        for (CartController.CartOperation operation : operations) {
+            Long productId = operation.getProductId();
+            Integer quantity = operation.getQuantity();
+            if (productId == null) {
+                throw new RuntimeException("productId is required");
+            }
+            Optional<CartItem> existingItem = Optional.ofNullable(cart.findCartItem(productId));
+            
+            switch (String.valueOf(operation.getOp())) {
+                case CartController.CartOperation.ADD:
+                    if (quantity == null || quantity <= 0) {
+                        throw new RuntimeException("quantity must be positive for add");
+                    }
+                    Product product = products.get(productId);
+                    if (product == null) {
+                        throw new RuntimeException("Product not found: " + productId);
+                    }
+                    if (Boolean.FALSE.equals(product.getAvailable())) {
+                        throw new RuntimeException("Product is no longer available: " + product.getName());
+                    }
+                    if (existingItem.isPresent()) {
+                        existingItem.get().setQuantity(existingItem.get().getQuantity() + quantity);
+                    } else if (removedItems.containsKey(productId)) {
+                        CartItem readded = removedItems.remove(productId);
+                        readded.setQuantity(quantity);
+                        readded.setPrice(product.getPrice());
+                        cart.addCartItem(readded);
+                    } else {
+                        cart.addCartItem(new CartItem(product, quantity, product.getPrice()));
+                    }
+                    break;
+                case CartController.CartOperation.UPDATE:
+                    if (quantity == null) {
+                        throw new RuntimeException("quantity is required for update");
+                    }
+                    CartItem item = existingItem.orElseThrow(() -> new RuntimeException("Cart item not found: " + productId));
+                    if (quantity <= 0) {
+                        cart.removeCartItem(item);
+                        removedItems.put(productId, item);
+                    } else {
+                        item.setQuantity(quantity);
+                    }
+                    break;
+                case CartController.CartOperation.REMOVE:
+                    CartItem removed = existingItem.orElseThrow(() -> new RuntimeException("Cart item not found: " + productId));
+                    cart.removeCartItem(removed);
+                    removedItems.put(productId, removed);
+                    break;
+                default:
+                    throw new RuntimeException("Unknown cart operation: " + operation.getOp());
+            }
+        }
+        
+        cart.setUpdatedAt(LocalDateTime.now());
+        // Cascades to the items (new ones inserted, removed ones deleted as orphans)
+        return cartRepository.save(cart);
+    }
+    
+    // Merge lines into the user's (or session's) cart in one transaction, e.g. a guest token cart at login.
+    // A line raises the cart's quantity to at least the given one rather than adding to it, so merging
+    // the same lines twice leaves the cart unchanged.
+    public void mergeLinesIntoCart(String sessionId, Long userId, Map<Long, Integer> lines) {
+        withCartLock(sessionId, userId, () -> {
+            cartStore.flushAndEvict(sessionId, userId);
+            return transactionTemplate.execute(status -> {
+                Cart cart = loadOrCreateCart(sessionId, userId);
+                for (Product product : productRepository.findByProductIds(new ArrayList<>(lines.keySet()))) {
+                    cartItemRepository.upsertAtLeastQuantity(cart.getCartId(), product.getProductId(),
+                            lines.get(product.getProductId()), product.getPrice());
+                }
+                return null;
+            });
+        });
+    }
+    
     public void clearCart(String sessionId, Long userId) {
-        Cart cart = getOrCreateCart(sessionId, userId);
-        cart.getCartItems().clear();
-        cartRepository.save(cart);
+        withCartLock(sessionId, userId, () -> {
+            cartStore.flushAndEvict(sessionId, userId);
+            return transactionTemplate.execute(status -> {
+                Cart cart = loadOrCreateCart(sessionId, userId);
+                cart.clearCartItems();
+                return cartRepository.save(cart);
+            });
+        });
     }
     
     @Transactional
     public void deleteCart(String sessionId) {
+        cartStore.flushAndEvict(sessionId, null);
         cartRepository.deleteBySessionId(sessionId);
     }
     
     // ADD THIS METHOD FOR CART MIGRATION WHEN USER LOGS IN
-    @Transactional
     public void migrateGuestCartToUser(String sessionId, Long userId) {
-        User user = userRepository.findByUserId(userId)
-            .orElseThrow(() -> new RuntimeException("User not found"));
-            
-        Optional<Cart> guestCart = cartRepository.findBySessionIdWithItems(sessionId);
-        Optional<Cart> userCart = cartRepository.findByUserWithItems(user);
+        // Both the guest cart and the user's cart change, so hold both stripes
+        withCartLocks(() -> {
+            cartStore.flushAndEvict(sessionId, userId);
+            return transactionTemplate.execute(status -> {
+                mergeGuestCartIntoUserCart(sessionId, userId);
+                return null;
+            });
+        }, lockKey(sessionId, null), lockKey(null, userId));
+    }
+    
+    // A fixed handful of set-based statements, however many items the carts hold.
+    // Idempotent: once the guest cart has been merged or claimed there is nothing left to do.
+    private void mergeGuestCartIntoUserCart(String sessionId, Long userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new RuntimeException("User not found");
+        }
         
-        if (guestCart.isPresent() && userCart.isPresent()) {
-            // Merge guest cart into user cart
-            Cart guest = guestCart.get();
-            Cart userCartObj = userCart.get();
-            
-            for (CartItem guestItem : guest.getCartItems()) {
-                // Check if user already has this product in cart
-                Optional<CartItem> existingItem = userCartObj.getCartItems().stream()
-                    .filter(item -> item.getProduct().getProductId().equals(guestItem.getProduct().getProductId()))
-                    .findFirst();
-                
-                if (existingItem.isPresent()) {
-                    // Update quantity
-                    CartItem item = existingItem.get();
-                    item.setQuantity(item.getQuantity() + guestItem.getQuantity());
-                    cartItemRepository.save(item);
-                } else {
-                    // Add new item
-                    CartItem newItem = new CartItem(guestItem.getProduct(), guestItem.getQuantity(), guestItem.getPrice());
-                    userCartObj.addCartItem(newItem);
-                    cartItemRepository.save(newItem);
-                }
-            }
-            
-            // Delete guest cart
-            cartRepository.delete(guest);
-            
-        } else if (guestCart.isPresent() && !userCart.isPresent()) {
+        // Row locks serialise concurrent logins for the same session across instances
+        Optional<Long> guestCartId = cartRepository.lockGuestCartId(sessionId);
+        if (!guestCartId.isPresent()) {
+            return;
+        }
+        Optional<Long> userCartId = cartRepository.lockUserCartId(userId);
+        LocalDateTime now = LocalDateTime.now();
+        
+        if (!userCartId.isPresent()) {
             // Associate guest cart with user
-            Cart cart = guestCart.get();
-            cart.setUser(user);
-            cartRepository.save(cart);
+            cartRepository.assignUser(guestCartId.get(), userId, now);
+            return;
         }
-        // If user cart exists but no guest cart, do nothing
+        
+        // Merge guest cart into user cart: upsert the quantities, then drop the guest rows
+        cartItemRepository.mergeCartItems(guestCartId.get(), userCartId.get());
+        cartItemRepository.deleteAllByCartId(guestCartId.get());
+        cartRepository.deleteByCartId(guestCartId.get());
+        cartRepository.touch(userCartId.get(), now);
     }
     
     // NEW METHOD FOR REMOVING SPECIFIC ITEMS AFTER ORDER (BUG FIX)
@@ -195,7 +421,7 @@ public class CartService {
         
         // 1. Remove the items from the Cart entity's collection
         for (CartItem item : itemsToRemove) {
-            cart.getCartItems().remove(item);
+            cart.removeCartItem(item);
         }
         
         // 2. Delete the items from the CartItem table in the database
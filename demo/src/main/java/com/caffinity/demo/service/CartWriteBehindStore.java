@@ -0,0 +1,517 @@
+package com.caffinity.demo.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.caffinity.demo.entity.Cart;
+import com.caffinity.demo.entity.CartItem;
+import com.caffinity.demo.entity.Product;
+import com.caffinity.demo.repository.CartItemRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Write-behind cart store (cart.write-behind.enabled). Active carts live in memory, keyed by
+// cart ID; every user or session key that resolves to a cart points at that one entry.
+// Quantity changes and removals are applied there and written to cart_items/carts by a
+// background flusher in coalesced JDBC batches. A brand-new cart line is
+// still inserted straight away so the client gets its real cartItemId.
+// Checkout, cart migration, clearing and shutdown flush the affected carts synchronously first.
+@Component
+public class CartWriteBehindStore {
+
+    private static final String UPDATE_QUANTITY_SQL = "UPDATE cart_items SET quantity = ? WHERE cart_item_id = ?";
+    private static final String DELETE_ITEM_SQL = "DELETE FROM cart_items WHERE cart_item_id = ?";
+    private static final String TOUCH_CART_SQL = "UPDATE carts SET updated_at = ? WHERE cart_id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${cart.write-behind.enabled:false}")
+    private boolean enabled;
+
+    // Carts written per transaction by the background flusher
+    @Value("${cart.write-behind.batch-size:200}")
+    private int batchSize;
+
+    // Clean carts untouched for this long are dropped from memory
+    @Value("${cart.write-behind.idle-minutes:30}")
+    private long idleMinutes;
+
+    // cartId -> cached cart. One entry per database cart, however many keys lead to it.
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    // "user:<id>" / "session:<id>" -> cartId the loader resolved that key to
+    private final Map<String, Long> aliases = new ConcurrentHashMap<>();
+
+    // Serialises database writes. Lock order is always flushLock first, then an entry's lock.
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private TransactionTemplate writeTransaction;
+
+    @PostConstruct
+    void init() {
+        writeTransaction = new TransactionTemplate(transactionManager);
+        // A flush has to commit on its own, even when triggered from inside a checkout transaction
+        writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Cart read(String sessionId, Long userId, Supplier<Cart> loader) {
+        Entry entry = acquire(sessionId, userId, loader);
+        try {
+            return copyOf(entry.cart);
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    public Cart add(String sessionId, Long userId, Supplier<Cart> loader, Product product, int quantity) {
+        Entry entry = acquire(sessionId, userId, loader);
+        try {
+            CartItem line = entry.cart.findCartItem(product.getProductId());
+            if (line != null) {
+                line.setQuantity(line.getQuantity() + quantity);
+                entry.changeQuantity(line);
+                return copyOf(entry.cart);
+            }
+        } finally {
+            entry.lock.unlock();
+        }
+        return insertLine(sessionId, userId, loader, product, quantity);
+    }
+
+    public Cart update(String sessionId, Long userId, Supplier<Cart> loader, Long productId, int quantity) {
+        if (quantity <= 0) {
+            return remove(sessionId, userId, loader, productId);
+        }
+        Entry entry = acquire(sessionId, userId, loader);
+        try {
+            CartItem line = entry.cart.findCartItem(productId);
+            if (line == null) {
+                throw new RuntimeException("Cart item not found");
+            }
+            line.setQuantity(quantity);
+            entry.changeQuantity(line);
+            return copyOf(entry.cart);
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    public Cart remove(String sessionId, Long userId, Supplier<Cart> loader, Long productId) {
+        Entry entry = acquire(sessionId, userId, loader);
+        try {
+            CartItem line = entry.cart.findCartItem(productId);
+            if (line == null) {
+                throw new RuntimeException("Cart item not found");
+            }
+            entry.cart.removeCartItem(line);
+            entry.removeLine(line);
+            return copyOf(entry.cart);
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    // Write out and forget the carts for this session/user, so the database copy is current.
+    // Used before anything reads or rewrites the cart tables directly.
+    public void flushAndEvict(String sessionId, Long userId) {
+        if (!enabled) {
+            return;
+        }
+        Set<Long> cartIds = new HashSet<>();
+        if (userId != null) {
+            addIfPresent(cartIds, aliases.get(userKey(userId)));
+        }
+        if (sessionId != null) {
+            addIfPresent(cartIds, aliases.get(sessionKey(sessionId)));
+        }
+        // The same cart may be cached under a key this caller didn't use, e.g. a user's cart loaded by session
+        entries.forEach((cartId, entry) -> {
+            if ((sessionId != null && sessionId.equals(entry.cartSessionId))
+                    || (userId != null && userId.equals(entry.cartUserId))) {
+                cartIds.add(cartId);
+            }
+        });
+        for (Long cartId : cartIds) {
+            evict(cartId);
+        }
+    }
+
+    private static void addIfPresent(Set<Long> cartIds, Long cartId) {
+        if (cartId != null) {
+            cartIds.add(cartId);
+        }
+    }
+
+    // Write out and forget every cart
+    public void evictAll() {
+        if (!enabled) {
+            return;
+        }
+        for (Long cartId : new ArrayList<>(entries.keySet())) {
+            evict(cartId);
+        }
+    }
+
+    // Write out and forget the cached carts holding this product, e.g. after its cart rows were deleted
+    public void evictCartsContaining(Long productId) {
+        if (!enabled) {
+            return;
+        }
+        List<Long> cartIds = new ArrayList<>();
+        entries.forEach((cartId, entry) -> {
+            entry.lock.lock();
+            try {
+                if (entry.cart.findCartItem(productId) != null) {
+                    cartIds.add(cartId);
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        });
+        for (Long cartId : cartIds) {
+            evict(cartId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cart.write-behind.flush-interval-ms:2000}")
+    public void flushDirty() {
+        if (!enabled || entries.isEmpty()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            List<Entry> owners = new ArrayList<>();
+            List<PendingWrite> batch = new ArrayList<>();
+            for (Entry entry : entries.values()) {
+                // A cart that is busy right now is picked up on the next round
+                if (!entry.lock.tryLock()) {
+                    continue;
+                }
+                try {
+                    PendingWrite write = entry.drain();
+                    if (write != null) {
+                        owners.add(entry);
+                        batch.add(write);
+                    }
+                } finally {
+                    entry.lock.unlock();
+                }
+                if (batch.size() >= batchSize) {
+                    writeBatch(owners, batch);
+                    owners.clear();
+                    batch.clear();
+                }
+            }
+            writeBatch(owners, batch);
+            evictIdle();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (enabled && !entries.isEmpty()) {
+            System.out.println("🛒 Flushing " + entries.size() + " in-memory carts before shutdown");
+            evictAll();
+        }
+    }
+
+    // Returns the locked entry for the cart this user/session resolves to. A key seen for the
+    // first time goes through the loader; if its cart is already cached under another key
+    // (a user without a cart of their own gets the session cart), that entry is shared.
+    private Entry acquire(String sessionId, Long userId, Supplier<Cart> loader) {
+        String key = userId != null ? userKey(userId) : sessionKey(sessionId);
+        while (true) {
+            Long cartId = aliases.get(key);
+            if (cartId != null) {
+                Entry entry = entries.get(cartId);
+                if (entry != null) {
+                    entry.lock.lock();
+                    if (!entry.evicted) {
+                        entry.lastAccess = System.currentTimeMillis();
+                        return entry;
+                    }
+                    entry.lock.unlock();
+                }
+                aliases.remove(key, cartId);
+                continue;
+            }
+
+            Cart loaded = loader.get();
+            Entry entry = entries.computeIfAbsent(loaded.getCartId(), id -> new Entry());
+            entry.lock.lock();
+            if (entry.evicted) {
+                entry.lock.unlock();
+                continue;
+            }
+            if (entry.cart == null) {
+                // Detached from here on; keep the items in a plain list
+                loaded.setCartItems(new ArrayList<>(loaded.getCartItems()));
+                entry.cart = loaded;
+                entry.cartSessionId = loaded.getSessionId();
+                entry.cartUserId = loaded.getUser() != null ? loaded.getUser().getUserId() : null;
+            }
+            // Otherwise the cached copy, with its pending writes, wins over the one just loaded
+            entry.keys.add(key);
+            aliases.put(key, loaded.getCartId());
+            entry.lastAccess = System.currentTimeMillis();
+            return entry;
+        }
+    }
+
+    // New lines are written immediately, together with anything already pending for the cart
+    private Cart insertLine(String sessionId, Long userId, Supplier<Cart> loader, Product product, int quantity) {
+        flushLock.lock();
+        try {
+            Entry entry = acquire(sessionId, userId, loader);
+            try {
+                CartItem line = entry.cart.findCartItem(product.getProductId());
+                if (line != null) {
+                    // Added by a concurrent request while we waited
+                    line.setQuantity(line.getQuantity() + quantity);
+                    entry.changeQuantity(line);
+                    return copyOf(entry.cart);
+                }
+
+                PendingWrite pending = entry.drain();
+                CartItem newItem = new CartItem(product, quantity, product.getPrice());
+                newItem.setCart(entry.cart);
+                try {
+                    writeTransaction.executeWithoutResult(status -> {
+                        if (pending != null) {
+                            write(List.of(pending));
+                        }
+                        cartItemRepository.save(newItem);
+                    });
+                } catch (RuntimeException e) {
+                    if (pending != null) {
+                        entry.restore(pending);
+                    }
+                    throw e;
+                }
+                entry.cart.addCartItem(newItem);
+                entry.touch();
+                return copyOf(entry.cart);
+            } finally {
+                entry.lock.unlock();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void evict(Long cartId) {
+        flushLock.lock();
+        try {
+            Entry entry = entries.get(cartId);
+            if (entry == null) {
+                return;
+            }
+            entry.lock.lock();
+            try {
+                PendingWrite pending = entry.drain();
+                if (pending != null) {
+                    try {
+                        writeTransaction.executeWithoutResult(status -> write(List.of(pending)));
+                    } catch (RuntimeException e) {
+                        entry.restore(pending);
+                        throw e;
+                    }
+                }
+                forget(cartId, entry);
+            } finally {
+                entry.lock.unlock();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Called with the entry's lock held
+    private void forget(Long cartId, Entry entry) {
+        entry.evicted = true;
+        entries.remove(cartId, entry);
+        for (String key : entry.keys) {
+            aliases.remove(key, cartId);
+        }
+    }
+
+    // Called with flushLock held
+    private void writeBatch(List<Entry> owners, List<PendingWrite> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            writeTransaction.executeWithoutResult(status -> write(batch));
+        } catch (RuntimeException e) {
+            System.err.println("❌ Cart write-behind flush failed, will retry: " + e.getMessage());
+            for (int i = 0; i < batch.size(); i++) {
+                Entry owner = owners.get(i);
+                owner.lock.lock();
+                try {
+                    owner.restore(batch.get(i));
+                } finally {
+                    owner.lock.unlock();
+                }
+            }
+        }
+    }
+
+    private void write(List<PendingWrite> writes) {
+        List<Object[]> quantities = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        List<Object[]> touches = new ArrayList<>();
+        for (PendingWrite write : writes) {
+            write.quantities.forEach((cartItemId, quantity) -> quantities.add(new Object[] { quantity, cartItemId }));
+            write.deletes.forEach(cartItemId -> deletes.add(new Object[] { cartItemId }));
+            touches.add(new Object[] { Timestamp.valueOf(write.updatedAt), write.cartId });
+        }
+        if (!quantities.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_QUANTITY_SQL, quantities);
+        }
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_ITEM_SQL, deletes);
+        }
+        jdbcTemplate.batchUpdate(TOUCH_CART_SQL, touches);
+    }
+
+    // Called with flushLock held, after the dirty carts were written
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMinutes * 60_000L;
+        entries.forEach((cartId, entry) -> {
+            if (entry.lastAccess < cutoff && entry.lock.tryLock()) {
+                try {
+                    if (!entry.dirty) {
+                        forget(cartId, entry);
+                    }
+                } finally {
+                    entry.lock.unlock();
+                }
+            }
+        });
+    }
+
+    // Callers get a copy, so serialising the response can't race with the next mutation
+    private static Cart copyOf(Cart cart) {
+        Cart copy = new Cart(cart.getSessionId(), cart.getUser());
+        copy.setCartId(cart.getCartId());
+        copy.setCreatedAt(cart.getCreatedAt());
+        copy.setUpdatedAt(cart.getUpdatedAt());
+        List<CartItem> items = new ArrayList<>(cart.getCartItems().size());
+        for (CartItem item : cart.getCartItems()) {
+            CartItem itemCopy = new CartItem(item.getProduct(), item.getQuantity(), item.getPrice());
+            itemCopy.setCartItemId(item.getCartItemId());
+            itemCopy.setCart(copy);
+            items.add(itemCopy);
+        }
+        copy.setCartItems(items);
+        return copy;
+    }
+
+    private static String userKey(Long userId) {
+        return "user:" + userId;
+    }
+
+    private static String sessionKey(String sessionId) {
+        return "session:" + sessionId;
+    }
+
+    // One cached cart. Everything except lastAccess, keys and the owner IDs is guarded by lock.
+    private static class Entry {
+        private final ReentrantLock lock = new ReentrantLock();
+        // user/session keys currently aliased to this entry
+        private final Set<String> keys = ConcurrentHashMap.newKeySet();
+        private final Map<Long, Integer> pendingQuantities = new HashMap<>();
+        private final Set<Long> pendingDeletes = new HashSet<>();
+        private Cart cart;
+        private boolean dirty;
+        private boolean evicted;
+        private volatile String cartSessionId;
+        private volatile Long cartUserId;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        void changeQuantity(CartItem line) {
+            pendingQuantities.put(line.getCartItemId(), line.getQuantity());
+            touch();
+        }
+
+        void removeLine(CartItem line) {
+            pendingQuantities.remove(line.getCartItemId());
+            pendingDeletes.add(line.getCartItemId());
+            touch();
+        }
+
+        void touch() {
+            cart.setUpdatedAt(LocalDateTime.now());
+            dirty = true;
+        }
+
+        PendingWrite drain() {
+            if (!dirty) {
+                return null;
+            }
+            PendingWrite write = new PendingWrite(cart.getCartId(), cart.getUpdatedAt(),
+                    new HashMap<>(pendingQuantities), new HashSet<>(pendingDeletes));
+            pendingQuantities.clear();
+            pendingDeletes.clear();
+            dirty = false;
+            return write;
+        }
+
+        // Put back a write that failed, without overriding anything newer
+        void restore(PendingWrite write) {
+            write.quantities.forEach((cartItemId, quantity) -> {
+                if (!pendingDeletes.contains(cartItemId)) {
+                    pendingQuantities.putIfAbsent(cartItemId, quantity);
+                }
+            });
+            pendingDeletes.addAll(write.deletes);
+            dirty = true;
+        }
+    }
+
+    private static class PendingWrite {
+        private final Long cartId;
+        private final LocalDateTime updatedAt;
+        private final Map<Long, Integer> quantities;
+        private final Set<Long> deletes;
+
+        PendingWrite(Long cartId, LocalDateTime updatedAt, Map<Long, Integer> quantities, Set<Long> deletes) {
+            this.cartId = cartId;
+            this.updatedAt = updatedAt;
+            this.quantities = quantities;
+            this.deletes = deletes;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.caffinity.demo.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Deletes guest carts (no user) that haven't changed for cart.sweeper.ttl-hours.
+// Works in small chunks with a pause in between, so it never holds locks on
+// carts/cart_items for long while customers are shopping.
+@Component
+public class GuestCartSweeper {
+
+    private static final String SELECT_EXPIRED_SQL =
+            "SELECT cart_id, session_id FROM carts WHERE user_id IS NULL AND updated_at < ? ORDER BY updated_at LIMIT ?";
+
+    // Both deletes repeat the expiry check, so a cart touched since it was selected survives
+    private static final String DELETE_ITEMS_SQL =
+            "DELETE ci FROM cart_items ci JOIN carts c ON c.cart_id = ci.cart_id " +
+            "WHERE c.cart_id IN (%s) AND c.user_id IS NULL AND c.updated_at < ?";
+    private static final String DELETE_CARTS_SQL =
+            "DELETE FROM carts WHERE cart_id IN (%s) AND user_id IS NULL AND updated_at < ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CartWriteBehindStore cartStore;
+
+    @Value("${cart.sweeper.enabled:true}")
+    private boolean enabled;
+
+    @Value("${cart.sweeper.ttl-hours:72}")
+    private long ttlHours;
+
+    @Value("${cart.sweeper.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${cart.sweeper.pause-ms:200}")
+    private long pauseMs;
+
+    // Upper bound per run; whatever is left is picked up next time
+    @Value("${cart.sweeper.max-chunks-per-run:100}")
+    private int maxChunksPerRun;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong cartsDeleted = new AtomicLong();
+    private final AtomicLong cartItemsDeleted = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile LocalDateTime lastRunAt;
+    private volatile long lastRunCartsDeleted;
+    private volatile long lastRunMillis;
+
+    @Scheduled(initialDelayString = "${cart.sweeper.initial-delay-ms:60000}",
+               fixedDelayString = "${cart.sweeper.interval-ms:600000}")
+    public void sweep() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusHours(ttlHours));
+        long deletedBefore = cartsDeleted.get();
+        try {
+            for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+                if (sweepChunk(cutoff) < chunkSize) {
+                    break;
+                }
+                Thread.sleep(pauseMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (DataAccessException e) {
+            failures.incrementAndGet();
+            System.err.println("❌ Guest cart sweep failed: " + e.getMessage());
+        } finally {
+            runs.incrementAndGet();
+            lastRunAt = LocalDateTime.now();
+            lastRunCartsDeleted = cartsDeleted.get() - deletedBefore;
+            lastRunMillis = System.currentTimeMillis() - started;
+        }
+        if (lastRunCartsDeleted > 0) {
+            System.out.println("🧹 Removed " + lastRunCartsDeleted + " abandoned guest carts in " + lastRunMillis + " ms");
+        }
+    }
+
+    // Returns how many carts were selected, which decides whether another chunk follows
+    private int sweepChunk(Timestamp cutoff) {
+        List<Long> cartIds = new ArrayList<>();
+        List<String> sessionIds = new ArrayList<>();
+        jdbcTemplate.query(SELECT_EXPIRED_SQL, rs -> {
+            cartIds.add(rs.getLong("cart_id"));
+            sessionIds.add(rs.getString("session_id"));
+        }, cutoff, chunkSize);
+        if (cartIds.isEmpty()) {
+            return 0;
+        }
+
+        // Don't leave a stale copy of a deleted cart in the write-behind store
+        for (String sessionId : sessionIds) {
+            cartStore.flushAndEvict(sessionId, null);
+        }
+
+        String placeholders = String.join(",", Collections.nCopies(cartIds.size(), "?"));
+        List<Object> args = new ArrayList<>(cartIds);
+        args.add(cutoff);
+        Object[] params = args.toArray();
+        int[] counts = transactionTemplate.execute(status -> new int[] {
+            jdbcTemplate.update(String.format(DELETE_ITEMS_SQL, placeholders), params),
+            jdbcTemplate.update(String.format(DELETE_CARTS_SQL, placeholders), params)
+        });
+        cartItemsDeleted.addAndGet(counts[0]);
+        cartsDeleted.addAndGet(counts[1]);
+        return cartIds.size();
+    }
+
+    public SweeperStats getStats() {
+        return new SweeperStats(enabled, ttlHours, runs.get(), cartsDeleted.get(), cartItemsDeleted.get(),
+                failures.get(), lastRunAt, lastRunCartsDeleted, lastRunMillis);
+    }
+
+    // Helper class for sweeper metrics
+    public static class SweeperStats {
+        private final boolean enabled;
+        private final long ttlHours;
+        private final long runs;
+        private final long cartsDeleted;
+        private final long cartItemsDeleted;
+        private final long failures;
+        private final LocalDateTime lastRunAt;
+        private final long lastRunCartsDeleted;
+        private final long lastRunMillis;
+
+        SweeperStats(boolean enabled, long ttlHours, long runs, long cartsDeleted, long cartItemsDeleted,
+                     long failures, LocalDateTime lastRunAt, long lastRunCartsDeleted, long lastRunMillis) {
+            this.enabled = enabled;
+            this.ttlHours = ttlHours;
+            this.runs = runs;
+            this.cartsDeleted = cartsDeleted;
+            this.cartItemsDeleted = cartItemsDeleted;
+            this.failures = failures;
+            this.lastRunAt = lastRunAt;
+            this.lastRunCartsDeleted = lastRunCartsDeleted;
+            this.lastRunMillis = lastRunMillis;
+        }
+
+        public boolean isEnabled() { return enabled; }
+
+        public long getTtlHours() { return ttlHours; }
+
+        public long getRuns() { return runs; }
+
+        public long getCartsDeleted() { return cartsDeleted; }
+
+        public long getCartItemsDeleted() { return cartItemsDeleted; }
+
+        public long getFailures() { return failures; }
+
+        public LocalDateTime getLastRunAt() { return lastRunAt; }
+
+        public long getLastRunCartsDeleted() { return lastRunCartsDeleted; }
+
+        public long getLastRunMillis() { return lastRunMillis; }
+    }
+}
@@ -0,0 +1,298 @@
+package com.caffinity.demo.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.caffinity.demo.controller.CartController;
+import com.caffinity.demo.entity.Cart;
+import com.caffinity.demo.entity.CartItem;
+import com.caffinity.demo.entity.Product;
+
+import jakarta.annotation.PostConstruct;
+
+// Stateless guest carts (cart.guest-token.enabled). An anonymous visitor's cart travels with
+// every request as an HMAC-signed token listing product IDs and quantities; nothing is written
+// to the database until the guest logs in and the cart is migrated.
+// Prices and product details come from the catalog cache whenever the token is read.
+@Service
+public class GuestCartTokenService {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String VERSION = "1";
+    private static final int MAX_LINES = 50;
+    private static final int MAX_QUANTITY = 999;
+
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
+    @Autowired
+    private CartService cartService;
+
+    @Value("${cart.guest-token.enabled:false}")
+    private boolean enabled;
+
+    // Shared by every instance; when blank, a random key is used and tokens don't survive a restart
+    @Value("${cart.guest-token.secret:}")
+    private String secret;
+
+    @Value("${cart.guest-token.ttl-days:30}")
+    private long ttlDays;
+
+    private SecretKeySpec key;
+
+    @PostConstruct
+    void init() {
+        byte[] keyBytes;
+        if (secret == null || secret.isBlank()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            if (enabled) {
+                System.err.println("⚠️ cart.guest-token.secret is not set; guest carts will not survive a restart");
+            }
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public TokenCart read(String token) {
+        return issue(decode(token));
+    }
+
+    public TokenCart add(String token, Long productId, Integer quantity) {
+        Map<Long, Integer> lines = decode(token);
+        if (quantity == null || quantity <= 0) {
+            throw new RuntimeException("quantity must be positive");
+        }
+        requireWithinLimit(quantity);
+        requireAvailable(productId);
+        lines.merge(productId, quantity, GuestCartTokenService::cappedSum);
+        return issue(lines);
+    }
+
+    public TokenCart update(String token, Long productId, Integer quantity) {
+        Map<Long, Integer> lines = decode(token);
+        if (!lines.containsKey(productId)) {
+            throw new RuntimeException("Cart item not found");
+        }
+        if (quantity == null || quantity <= 0) {
+            lines.remove(productId);
+        } else {
+            requireWithinLimit(quantity);
+            lines.put(productId, quantity);
+        }
+        return issue(lines);
+    }
+
+    public TokenCart remove(String token, Long productId) {
+        Map<Long, Integer> lines = decode(token);
+        if (lines.remove(productId) == null) {
+            throw new RuntimeException("Cart item not found");
+        }
+        return issue(lines);
+    }
+
+    public TokenCart clear() {
+        return issue(new LinkedHashMap<>());
+    }
+
+    // Same semantics as CartService.applyBatch: in order, all or nothing
+    public TokenCart applyBatch(String token, List<CartController.CartOperation> operations) {
+        Map<Long, Integer> lines = decode(token);
+        for (CartController.CartOperation operation : operations) {
+            Long productId = operation.getProductId();
+            Integer quantity = operation.getQuantity();
+            if (productId == null) {
+                throw new RuntimeException("productId is required");
+            }
+            switch (String.valueOf(operation.getOp())) {
+                case CartController.CartOperation.ADD:
+                    if (quantity == null || quantity <= 0) {
+                        throw new RuntimeException("quantity must be positive for add");
+                    }
+                    requireWithinLimit(quantity);
+                    requireAvailable(productId);
+                    lines.merge(productId, quantity, GuestCartTokenService::cappedSum);
+                    break;
+                case CartController.CartOperation.UPDATE:
+                    if (quantity == null) {
+                        throw new RuntimeException("quantity is required for update");
+                    }
+                    if (!lines.containsKey(productId)) {
+                        throw new RuntimeException("Cart item not found: " + productId);
+                    }
+                    if (quantity <= 0) {
+                        lines.remove(productId);
+                    } else {
+                        requireWithinLimit(quantity);
+                        lines.put(productId, quantity);
+                    }
+                    break;
+                case CartController.CartOperation.REMOVE:
+                    if (lines.remove(productId) == null) {
+                        throw new RuntimeException("Cart item not found: " + productId);
+                    }
+                    break;
+                default:
+                    throw new RuntimeException("Unknown cart operation: " + operation.getOp());
+            }
+        }
+        return issue(lines);
+    }
+
+    // Login: write the token's lines into the user's cart. This is the first time they touch the database.
+    // The token stays valid after login, so replaying it must not add its quantities again: each line
+    // only raises the cart's quantity to at least the token's, which makes a second migration a no-op.
+    public void migrateToUser(String token, String sessionId, Long userId) {
+        Map<Long, Integer> lines = decode(token);
+        ProductCatalogCache.Snapshot snapshot = catalogCache.get();
+        lines.keySet().removeIf(productId -> !isAvailable(snapshot.getById(productId)));
+        if (!lines.isEmpty()) {
+            cartService.mergeLinesIntoCart(sessionId, userId, lines);
+        }
+    }
+
+    private static void requireWithinLimit(int quantity) {
+        if (quantity > MAX_QUANTITY) {
+            throw new RuntimeException("quantity cannot exceed " + MAX_QUANTITY);
+        }
+    }
+
+    private static Integer cappedSum(Integer existing, Integer added) {
+        return (int) Math.min((long) existing + added, MAX_QUANTITY);
+    }
+
+    private void requireAvailable(Long productId) {
+        Product product = catalogCache.get().getById(productId);
+        if (product == null) {
+            throw new RuntimeException("Product not found");
+        }
+        if (!isAvailable(product)) {
+            throw new RuntimeException("Product is no longer available");
+        }
+    }
+
+    private static boolean isAvailable(Product product) {
+        return product != null && !Boolean.FALSE.equals(product.getAvailable());
+    }
+
+    // Build the cart the client sees and a fresh token for it. Lines for products that no longer
+    // exist are dropped.
+    private TokenCart issue(Map<Long, Integer> lines) {
+        if (lines.size() > MAX_LINES) {
+            throw new RuntimeException("A guest cart can hold at most " + MAX_LINES + " products");
+        }
+        ProductCatalogCache.Snapshot snapshot = catalogCache.get();
+        Cart cart = new Cart();
+        StringBuilder payload = new StringBuilder(VERSION).append(';')
+                .append(System.currentTimeMillis() / 1000).append(';');
+        boolean first = true;
+        for (Map.Entry<Long, Integer> line : lines.entrySet()) {
+            Product product = snapshot.getById(line.getKey());
+            if (product == null) {
+                continue;
+            }
+            int quantity = Math.min(line.getValue(), MAX_QUANTITY);
+            CartItem item = new CartItem(product, quantity, product.getPrice());
+            // No row exists, so lines are identified by the negated product ID
+            item.setCartItemId(-product.getProductId());
+            cart.addCartItem(item);
+
+            if (!first) {
+                payload.append(',');
+            }
+            payload.append(line.getKey()).append(':').append(quantity);
+            first = false;
+        }
+        byte[] body = payload.toString().getBytes(StandardCharsets.UTF_8);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String token = encoder.encodeToString(body) + "." + encoder.encodeToString(sign(body));
+        return new TokenCart(cart, token);
+    }
+
+    // A missing, tampered, expired or malformed token is treated as an empty cart
+    private Map<Long, Integer> decode(String token) {
+        Map<Long, Integer> lines = new LinkedHashMap<>();
+        if (token == null || token.isBlank()) {
+            return lines;
+        }
+        try {
+            int dot = token.indexOf('.');
+            if (dot < 0) {
+                return lines;
+            }
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            byte[] body = decoder.decode(token.substring(0, dot));
+            byte[] signature = decoder.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(sign(body), signature)) {
+                return lines;
+            }
+
+            String[] parts = new String(body, StandardCharsets.UTF_8).split(";", -1);
+            if (parts.length != 3 || !VERSION.equals(parts[0])) {
+                return lines;
+            }
+            long issuedAt = Long.parseLong(parts[1]);
+            if (System.currentTimeMillis() / 1000 - issuedAt > Duration.ofDays(ttlDays).getSeconds()) {
+                return lines;
+            }
+            if (parts[2].isEmpty()) {
+                return lines;
+            }
+            for (String line : parts[2].split(",")) {
+                int colon = line.indexOf(':');
+                int quantity = Integer.parseInt(line.substring(colon + 1));
+                if (quantity <= 0 || quantity > MAX_QUANTITY || lines.size() >= MAX_LINES) {
+                    return new LinkedHashMap<>();
+                }
+                lines.put(Long.valueOf(line.substring(0, colon)), quantity);
+            }
+            return lines;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return new LinkedHashMap<>();
+        }
+    }
+
+    private byte[] sign(byte[] body) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(body);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 not available", e);
+        }
+    }
+
+    // A guest cart plus the token that encodes it
+    public static class TokenCart {
+        private final Cart cart;
+        private final String token;
+
+        TokenCart(Cart cart, String token) {
+            this.cart = cart;
+            this.token = token;
+        }
+
+        public Cart getCart() { return cart; }
+
+        public String getToken() { return token; }
+    }
+}
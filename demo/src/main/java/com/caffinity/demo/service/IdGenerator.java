@@ -0,0 +1,18 @@
+package com.caffinity.demo.service;
+
+// Source of unique, roughly time-ordered ids (transaction ids, order numbers).
+// The implementation is chosen in IdGeneratorConfig.
+public interface IdGenerator {
+
+    long nextId();
+
+    // prefix + the id zero-padded to 19 digits, so the strings sort in the same order as the ids
+    default String nextId(String prefix) {
+        String digits = Long.toString(nextId());
+        StringBuilder id = new StringBuilder(prefix.length() + 19).append(prefix);
+        for (int i = digits.length(); i < 19; i++) {
+            id.append('0');
+        }
+        return id.append(digits).toString();
+    }
+}
@@ -0,0 +1,147 @@
+package com.caffinity.demo.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.caffinity.demo.controller.OrderController;
+import com.caffinity.demo.entity.OrderIdempotencyKey;
+import com.caffinity.demo.repository.OrderIdempotencyKeyRepository;
+
+// Idempotency-Key support for order submission. Keys are recorded in order_idempotency_keys
+// inside the order's own transaction; recently completed keys are also kept in a small LRU
+// so a client retry is answered without touching the database.
+@Service
+public class OrderIdempotencyService {
+
+    public static final int MAX_KEY_LENGTH = 100;
+
+    @Autowired
+    private OrderIdempotencyKeyRepository keyRepository;
+
+    @Value("${order.idempotency.cache-size:10000}")
+    private int cacheSize;
+
+    @Value("${order.idempotency.retention-hours:24}")
+    private long retentionHours;
+
+    // key -> completed request, most recently used last
+    private final Map<String, CompletedRequest> recent = Collections.synchronizedMap(
+            new LinkedHashMap<String, CompletedRequest>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CompletedRequest> eldest) {
+                    return size() > cacheSize;
+                }
+            });
+
+    // Fast path used before any transaction is opened. Returns the order already created
+    // for this key, or null when the key hasn't been completed yet.
+    public Long findCompletedOrder(String idempotencyKey, String requestHash) {
+        CompletedRequest cached = recent.get(idempotencyKey);
+        if (cached != null) {
+            requireSameRequest(cached.requestHash, requestHash);
+            return cached.orderId;
+        }
+        OrderIdempotencyKey stored = keyRepository.findByIdempotencyKey(idempotencyKey).orElse(null);
+        if (stored == null || stored.getOrderId() == null) {
+            return null;
+        }
+        requireSameRequest(stored.getRequestHash(), requestHash);
+        remember(idempotencyKey, requestHash, stored.getOrderId());
+        return stored.getOrderId();
+    }
+
+    // Called at the start of the order transaction. Returns null when this transaction now
+    // owns the key, otherwise the order created by whoever claimed it first.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Long claim(String idempotencyKey, String requestHash) {
+        if (keyRepository.claim(idempotencyKey, requestHash) == 1) {
+            return null;
+        }
+        OrderIdempotencyKey stored = keyRepository.findByIdempotencyKeyForUpdate(idempotencyKey)
+                .orElseThrow(() -> new RuntimeException("Idempotency-Key could not be claimed, please retry"));
+        requireSameRequest(stored.getRequestHash(), requestHash);
+        if (stored.getOrderId() == null) {
+            throw new RuntimeException("An order with this Idempotency-Key is still being processed");
+        }
+        return stored.getOrderId();
+    }
+
+    // Link the claimed key to the new order; it becomes visible once the transaction commits
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void complete(String idempotencyKey, String requestHash, Long orderId) {
+        keyRepository.attachOrder(idempotencyKey, orderId);
+        TransactionCallbacks.afterCommit(() -> remember(idempotencyKey, requestHash, orderId));
+    }
+
+    // Covers the caller as well as the body, so one customer's key can't replay another's order
+    public String fingerprint(Long userId, String sessionId, OrderController.CreateOrderRequest request) {
+        StringBuilder canonical = new StringBuilder()
+                .append(userId != null ? "user:" + userId : "session:" + sessionId).append('|')
+                .append(request.getTotalAmount()).append('|')
+                .append(request.getPaymentMethod()).append('|')
+                .append(request.getTransactionId()).append('|');
+        if (request.getOrderItems() != null) {
+            for (OrderController.OrderItemData item : request.getOrderItems()) {
+                canonical.append(item.getProductId()).append(':')
+                        .append(item.getQuantity()).append(':')
+                        .append(item.getPrice()).append(',');
+            }
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${order.idempotency.purge-initial-delay-ms:300000}",
+               fixedDelayString = "${order.idempotency.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        int deleted = keyRepository.deleteCreatedBefore(LocalDateTime.now().minusHours(retentionHours));
+        if (deleted > 0) {
+            System.out.println("🧹 Removed " + deleted + " expired order idempotency keys");
+        }
+    }
+
+    private void remember(String idempotencyKey, String requestHash, Long orderId) {
+        recent.put(idempotencyKey, new CompletedRequest(requestHash, orderId));
+    }
+
+    private static void requireSameRequest(String storedHash, String requestHash) {
+        if (!storedHash.equals(requestHash)) {
+            throw new KeyReuseException();
+        }
+    }
+
+    // Thrown when a key comes back with a different caller or order body
+    public static class KeyReuseException extends RuntimeException {
+        KeyReuseException() {
+            super("Idempotency-Key was already used for a different order");
+        }
+    }
+
+    private static class CompletedRequest {
+        private final String requestHash;
+        private final Long orderId;
+
+        CompletedRequest(String requestHash, Long orderId) {
+            this.requestHash = requestHash;
+            this.orderId = orderId;
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package com.caffinity.demo.service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -16,6 +18,7 @@ import com.caffinity.demo.entity.Order;
 import com.caffinity.demo.entity.OrderItem;
 import com.caffinity.demo.entity.OrderStatus;
 import com.caffinity.demo.entity.PaymentMethod;
+import com.caffinity.demo.entity.Product;
 import com.caffinity.demo.entity.User;
 import com.caffinity.demo.repository.CartRepository;
 import com.caffinity.demo.repository.OrderItemRepository;
@@ -40,14 +43,50 @@ public class OrderService {
 
     @Autowired
     private ProductRepository productRepository;
+    
+    @Autowired
+    private CartWriteBehindStore cartStore;
+    
+    @Autowired
+    private OrderIdempotencyService idempotencyService;
+    
+    @Autowired
+    private IdGenerator idGenerator;
+    
+    @Autowired
+    private OrderStatisticsTracker statisticsTracker;
+    
+    @Autowired
+    private SalesRollupService salesRollupService;
 
     // Create order from frontend with customer info and order items
     @Transactional
     public Order createOrderFromFrontend(Long userId, String sessionId, com.caffinity.demo.controller.OrderController.CreateOrderRequest request) {
+        return createOrderFromFrontend(userId, sessionId, request, null);
+    }
+    
+    // With an Idempotency-Key, the key is claimed first in the same transaction. A retry that
+    // arrives while the original is still running waits on that claim, then gets the original order.
+    @Transactional
+    public Order createOrderFromFrontend(Long userId, String sessionId, com.caffinity.demo.controller.OrderController.CreateOrderRequest request, String idempotencyKey) {
         System.out.println("🔄 Creating order from frontend for user ID: " + userId + " and session ID: " + sessionId);
         System.out.println("💰 Payment Method from request: " + request.getPaymentMethod());
         System.out.println("💳 Transaction ID from request: " + request.getTransactionId());
         
+        String requestHash = null;
+        if (idempotencyKey != null) {
+            requestHash = idempotencyService.fingerprint(userId, sessionId, request);
+            Long existingOrderId = idempotencyService.claim(idempotencyKey, requestHash);
+            if (existingOrderId != null) {
+                System.out.println("🔁 Replaying order " + existingOrderId + " for Idempotency-Key " + idempotencyKey);
+                return orderRepository.findByIdWithItems(existingOrderId)
+                        .orElseThrow(() -> new RuntimeException("Order not found with id: " + existingOrderId));
+            }
+        }
+        
+        // Make sure the cart tables are current before checkout reads them
+        cartStore.flushAndEvict(sessionId, userId);
+        
         try {
             User user = null;
             if (userId != null) {
@@ -108,13 +147,10 @@ public class OrderService {
             
             // Add order items from frontend and populate the map
             if (request.getOrderItems() != null && !request.getOrderItems().isEmpty()) {
+                Map<Long, Product> products = resolveOrderProducts(request.getOrderItems());
                 for (com.caffinity.demo.controller.OrderController.OrderItemData itemData : request.getOrderItems()) {
                     OrderItem orderItem = new OrderItem();
-                    
-                    // Fetch the product by ID
-                    orderItem.setProduct(productRepository.findByProductId(itemData.getProductId())
-                            .orElseThrow(() -> new RuntimeException("Product not found with id: " + itemData.getProductId())));
-                    
+                    orderItem.setProduct(products.get(itemData.getProductId()));
                     orderItem.setQuantity(itemData.getQuantity());
                     orderItem.setUnitPrice(itemData.getPrice());
                     order.addOrderItem(orderItem);
@@ -129,6 +165,11 @@ public class OrderService {
             System.out.println("✅ Order created successfully with ID: " + savedOrder.getOrderId());
             System.out.println("💰 Payment Method saved: " + savedOrder.getPaymentMethod());
             System.out.println("💳 Transaction ID saved: " + savedOrder.getTransactionId());
+            statisticsTracker.orderCreated(savedOrder);
+            
+            if (idempotencyKey != null) {
+                idempotencyService.complete(idempotencyKey, requestHash, savedOrder.getOrderId());
+            }
             
             // Only remove ordered items from cart
             Optional<Cart> userCartOpt = Optional.empty();
@@ -147,29 +188,25 @@ public class OrderService {
                 Cart userCart = userCartOpt.get();
                 int itemsModifiedCount = 0;
                 
-                // Use Iterator for safe modification/removal while iterating
-                Iterator<CartItem> iterator = userCart.getCartItems().iterator();
-                while (iterator.hasNext()) {
-                    CartItem cartItem = iterator.next();
-                    Long productId = cartItem.getProduct().getProductId();
+                // Look each ordered product up in the cart's productId index
+                for (Map.Entry<Long, Integer> ordered : orderedItemsQuantityMap.entrySet()) {
+                    Long productId = ordered.getKey();
+                    Integer orderedQuantity = ordered.getValue();
+                    CartItem cartItem = userCart.findCartItem(productId);
+                    if (cartItem == null) {
+                        continue;
+                    }
                     
-                    if (orderedItemsQuantityMap.containsKey(productId)) {
-                        Integer orderedQuantity = orderedItemsQuantityMap.get(productId);
-                        
-                        if (cartItem.getQuantity() <= orderedQuantity) {
-                            // Remove the item completely from the cart's collection
-                            iterator.remove();
-                            itemsModifiedCount++;
-                            System.out.println("🛒 Removed CartItem for Product ID: " + productId + " as quantity was fully ordered.");
-                        } else {
-                            // Decrement quantity
-                            cartItem.setQuantity(cartItem.getQuantity() - orderedQuantity);
-                            System.out.println("🛒 Decremented CartItem quantity for Product ID: " + productId + " to " + cartItem.getQuantity());
-                            itemsModifiedCount++;
-                        }
-                        
-                        // Remove the entry from the map after processing the corresponding cart item
-                        orderedItemsQuantityMap.remove(productId);
+                    if (cartItem.getQuantity() <= orderedQuantity) {
+                        // Remove the item completely from the cart's collection
+                        userCart.removeCartItem(cartItem);
+                        itemsModifiedCount++;
+                        System.out.println("🛒 Removed CartItem for Product ID: " + productId + " as quantity was fully ordered.");
+                    } else {
+                        // Decrement quantity
+                        cartItem.setQuantity(cartItem.getQuantity() - orderedQuantity);
+                        System.out.println("🛒 Decremented CartItem quantity for Product ID: " + productId + " to " + cartItem.getQuantity());
+                        itemsModifiedCount++;
                     }
                 }
                 
@@ -195,6 +232,41 @@ public class OrderService {
         }
     }
 
+    // Load every product in the order with one query. Missing or retired products are
+    // all reported together rather than failing on the first one.
+    private Map<Long, Product> resolveOrderProducts(List<com.caffinity.demo.controller.OrderController.OrderItemData> items) {
+        Set<Long> requestedIds = new LinkedHashSet<>();
+        for (com.caffinity.demo.controller.OrderController.OrderItemData itemData : items) {
+            if (itemData.getProductId() == null) {
+                throw new RuntimeException("Order item is missing a product id");
+            }
+            requestedIds.add(itemData.getProductId());
+        }
+        
+        Map<Long, Product> products = new HashMap<>();
+        for (Product product : productRepository.findByProductIds(new ArrayList<>(requestedIds))) {
+            products.put(product.getProductId(), product);
+        }
+        
+        List<Long> missingIds = new ArrayList<>();
+        List<String> unavailable = new ArrayList<>();
+        for (Long productId : requestedIds) {
+            Product product = products.get(productId);
+            if (product == null) {
+                missingIds.add(productId);
+            } else if (Boolean.FALSE.equals(product.getAvailable())) {
+                unavailable.add(product.getName());
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            throw new RuntimeException("Products not found with ids: " + missingIds);
+        }
+        if (!unavailable.isEmpty()) {
+            throw new RuntimeException("Products no longer available: " + String.join(", ", unavailable));
+        }
+        return products;
+    }
+    
     // Create order from cart
     @Transactional
     public Order createOrderFromCart(Long userId) {
@@ -207,6 +279,7 @@ public class OrderService {
             
             // Get user's cart with items
             String sessionId = "user_" + userId; // Assuming session ID format
+            cartStore.flushAndEvict(sessionId, userId);
             Optional<Cart> cartOpt = cartRepository.findBySessionIdWithItems(sessionId);
             
             if (!cartOpt.isPresent() || cartOpt.get().getCartItems().isEmpty()) {
@@ -241,6 +314,7 @@ public class OrderService {
             System.out.println("✅ Order created successfully with ID: " + savedOrder.getOrderId());
             System.out.println("💰 Payment Method: " + savedOrder.getPaymentMethod());
             System.out.println("💳 Transaction ID: " + savedOrder.getTransactionId());
+            statisticsTracker.orderCreated(savedOrder);
             
             // Clear cart after successful order creation
             cartRepository.deleteBySessionId(sessionId);
@@ -315,11 +389,19 @@ public class OrderService {
         System.out.println("🔄 Updating order status for ID: " + orderId + " to: " + newStatus);
         
         try {
-            Order order = orderRepository.findByOrderId(orderId)
+            // Locked so concurrent transitions of this order apply their statistics deltas one at a time
+            Order order = orderRepository.findByOrderIdForUpdate(orderId)
                     .orElseThrow(() -> new RuntimeException("Order not found with id: " + orderId));
             
+            OrderStatus previousStatus = order.getStatus();
+            if (previousStatus == newStatus) {
+                System.out.println("ℹ️ Order " + orderId + " is already " + newStatus);
+                return order;
+            }
             order.setStatus(newStatus);
             Order updatedOrder = orderRepository.save(order);
+            statisticsTracker.statusChanged(previousStatus, updatedOrder);
+            salesRollupService.statusChanged(previousStatus, updatedOrder);
             
             System.out.println("✅ Order status updated successfully");
             return updatedOrder;
@@ -336,7 +418,8 @@ public class OrderService {
         System.out.println("🔄 Cancelling order ID: " + orderId);
         
         try {
-            Order order = orderRepository.findByOrderId(orderId)
+            // Locked so a concurrent status change can't slip in between the checks and the update
+            Order order = orderRepository.findByOrderIdForUpdate(orderId)
                     .orElseThrow(() -> new RuntimeException("Order not found with id: " + orderId));
             
             // Only allow cancellation for pending or confirmed orders
@@ -348,8 +431,11 @@ public class OrderService {
                 throw new RuntimeException("Order is already cancelled");
             }
             
+            OrderStatus previousStatus = order.getStatus();
             order.setStatus(OrderStatus.CANCELLED);
             Order cancelledOrder = orderRepository.save(order);
+            statisticsTracker.statusChanged(previousStatus, cancelledOrder);
+            salesRollupService.statusChanged(previousStatus, cancelledOrder);
             
             System.out.println("✅ Order cancelled successfully");
             return cancelledOrder;
@@ -360,8 +446,20 @@ public class OrderService {
         }
     }
 
-    // Get order statistics
+    // Get order statistics - served from the in-memory counters, with the old
+    // queries kept as a fallback for when they couldn't be initialised
     public OrderStatistics getOrderStatistics() {
+        if (statisticsTracker.isReady()) {
+            OrderStatistics stats = new OrderStatistics();
+            stats.setTotalOrders(statisticsTracker.getTotalOrders());
+            stats.setPendingOrders(statisticsTracker.getCount(OrderStatus.PENDING));
+            stats.setConfirmedOrders(statisticsTracker.getCount(OrderStatus.CONFIRMED));
+            stats.setCompletedOrders(statisticsTracker.getCount(OrderStatus.COMPLETED));
+            stats.setCancelledOrders(statisticsTracker.getCount(OrderStatus.CANCELLED));
+            stats.setTotalRevenue(statisticsTracker.getAmount(OrderStatus.COMPLETED));
+            return stats;
+        }
+        
         System.out.println("📊 Calculating order statistics");
         
         try {
@@ -391,9 +489,7 @@ public class OrderService {
 
     // Helper method to generate unique transaction ID
     private String generateTransactionId() {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        String random = String.valueOf((int)(Math.random() * 10000));
-        return "TXN-" + timestamp + "-" + random;
+        return idGenerator.nextId("TXN-");
     }
 
     // Helper class for statistics
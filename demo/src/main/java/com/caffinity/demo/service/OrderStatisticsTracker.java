@@ -0,0 +1,192 @@
+package com.caffinity.demo.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.caffinity.demo.entity.Order;
+import com.caffinity.demo.entity.OrderStatisticsCheckpoint;
+import com.caffinity.demo.entity.OrderStatus;
+import com.caffinity.demo.repository.OrderRepository;
+import com.caffinity.demo.repository.OrderStatisticsCheckpointRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Order count and amount per status, kept in memory so the admin dashboard doesn't have to
+// scan the orders table. OrderService reports every creation and status change; the deltas
+// are applied after the transaction commits, so rolled-back work is never counted.
+//
+// The counters are saved to order_statistics_checkpoints every few minutes and on shutdown.
+// At startup they are rebuilt from one grouped query over orders (order.statistics.reconcile-on-startup);
+// with that turned off the last checkpoint is used instead.
+@Component
+public class OrderStatisticsTracker {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderStatisticsCheckpointRepository checkpointRepository;
+
+    @Value("${order.statistics.reconcile-on-startup:true}")
+    private boolean reconcileOnStartup;
+
+    private final Map<OrderStatus, AtomicLong> counts = new EnumMap<>(OrderStatus.class);
+    private final Map<OrderStatus, AtomicLong> amountCents = new EnumMap<>(OrderStatus.class);
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile boolean ready;
+
+    public OrderStatisticsTracker() {
+        for (OrderStatus status : OrderStatus.values()) {
+            counts.put(status, new AtomicLong());
+            amountCents.put(status, new AtomicLong());
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        List<OrderStatisticsCheckpoint> checkpoint = List.of();
+        try {
+            checkpoint = checkpointRepository.findAll();
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Could not read order statistics checkpoint: " + e.getMessage());
+        }
+
+        if (reconcileOnStartup || checkpoint.isEmpty()) {
+            try {
+                reconcile(checkpoint);
+                ready = true;
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("❌ Order statistics reconcile failed: " + e.getMessage());
+            }
+        }
+        if (!checkpoint.isEmpty()) {
+            for (OrderStatisticsCheckpoint row : checkpoint) {
+                counts.get(row.getStatus()).set(row.getOrderCount());
+                amountCents.get(row.getStatus()).set(row.getAmountCents());
+            }
+            ready = true;
+            System.out.println("📊 Order statistics restored from checkpoint of " + checkpoint.get(0).getUpdatedAt());
+        }
+    }
+
+    // Replace the counters with the real figures, logging how far the checkpoint had drifted
+    private void reconcile(List<OrderStatisticsCheckpoint> checkpoint) {
+        Map<OrderStatus, long[]> actual = new EnumMap<>(OrderStatus.class);
+        for (Object[] row : orderRepository.summarizeByStatus()) {
+            actual.put((OrderStatus) row[0], new long[] { ((Number) row[1]).longValue(), toCents(((Number) row[2]).doubleValue()) });
+        }
+        for (OrderStatisticsCheckpoint row : checkpoint) {
+            long[] figures = actual.getOrDefault(row.getStatus(), new long[2]);
+            if (figures[0] != row.getOrderCount() || figures[1] != row.getAmountCents()) {
+                System.out.println("📊 Checkpoint drift for " + row.getStatus() + ": " + row.getOrderCount()
+                        + " orders in checkpoint, " + figures[0] + " in database");
+            }
+        }
+        for (OrderStatus status : OrderStatus.values()) {
+            long[] figures = actual.getOrDefault(status, new long[2]);
+            counts.get(status).set(figures[0]);
+            amountCents.get(status).set(figures[1]);
+        }
+        dirty.set(true);
+        System.out.println("📊 Order statistics reconciled: " + getTotalOrders() + " orders");
+    }
+
+    public void orderCreated(Order order) {
+        OrderStatus status = order.getStatus();
+        long cents = toCents(order.getTotalAmount());
+        TransactionCallbacks.afterCommit(() -> apply(status, 1, cents));
+    }
+
+    // Called by OrderService inside the transaction that changed the status. The caller holds the
+    // order's row lock (OrderRepository.findByOrderIdForUpdate), so previous is the committed status
+    // and two concurrent transitions of one order can't both move the same count.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void statusChanged(OrderStatus previous, Order order) {
+        OrderStatus current = order.getStatus();
+        if (previous == current) {
+            return;
+        }
+        long cents = toCents(order.getTotalAmount());
+        TransactionCallbacks.afterCommit(() -> {
+            apply(previous, -1, -cents);
+            apply(current, 1, cents);
+        });
+    }
+
+    // False only when neither the reconcile nor a checkpoint could be loaded
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long getCount(OrderStatus status) {
+        return counts.get(status).get();
+    }
+
+    public long getTotalOrders() {
+        long total = 0;
+        for (AtomicLong count : counts.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    public double getAmount(OrderStatus status) {
+        return amountCents.get(status).get() / 100.0;
+    }
+
+    @Scheduled(initialDelayString = "${order.statistics.checkpoint-interval-ms:300000}",
+               fixedDelayString = "${order.statistics.checkpoint-interval-ms:300000}")
+    public void checkpoint() {
+        if (!ready || !dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            List<OrderStatisticsCheckpoint> rows = new ArrayList<>();
+            for (OrderStatus status : OrderStatus.values()) {
+                OrderStatisticsCheckpoint row = new OrderStatisticsCheckpoint();
+                row.setStatus(status);
+                row.setOrderCount(counts.get(status).get());
+                row.setAmountCents(amountCents.get(status).get());
+                row.setUpdatedAt(now);
+                rows.add(row);
+            }
+            checkpointRepository.saveAll(rows);
+        } catch (RuntimeException e) {
+            dirty.set(true);
+            System.err.println("❌ Saving order statistics checkpoint failed: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        checkpoint();
+    }
+
+    private void apply(OrderStatus status, long countDelta, long centsDelta) {
+        if (status == null) {
+            return;
+        }
+        counts.get(status).addAndGet(countDelta);
+        amountCents.get(status).addAndGet(centsDelta);
+        dirty.set(true);
+    }
+
+    private static long toCents(Double amount) {
+        return amount == null ? 0 : Math.round(amount * 100);
+    }
+}
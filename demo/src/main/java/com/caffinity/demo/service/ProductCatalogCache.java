@@ -0,0 +1,154 @@
+package com.caffinity.demo.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.caffinity.demo.entity.Product;
+import com.caffinity.demo.repository.ProductRepository;
+
+// In-memory copy of the whole product catalog, indexed by id, type and category.
+// The menu changes a few times a day, so reads are served from an immutable snapshot
+// and every product mutation bumps the version and drops the snapshot.
+@Component
+public class ProductCatalogCache {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final AtomicLong version = new AtomicLong();
+
+    // Distinguishes versions across restarts, since the counter starts from zero again
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private volatile Snapshot snapshot;
+
+    // Guards the version check and publication in load() against evict()
+    private final Object publishLock = new Object();
+
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        return load();
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    // Opaque tag for the catalog state a snapshot was read at, used to build ETags.
+    // Taken from the snapshot rather than the live counter so the tag always matches the body.
+    public String getTag(Snapshot snapshot) {
+        return epoch + "-" + Long.toString(snapshot.getVersion(), 36);
+    }
+
+    // Drop the snapshot once the surrounding transaction (if any) has committed,
+    // so a concurrent reader can't reload and pin the pre-commit state.
+    public void invalidate() {
+        TransactionCallbacks.afterCommit(this::evict);
+    }
+
+    private void evict() {
+        synchronized (publishLock) {
+            version.incrementAndGet();
+            snapshot = null;
+        }
+    }
+
+    private synchronized Snapshot load() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+
+        long loadedVersion = version.get();
+        List<Product> products = new ArrayList<>(productRepository.findAll());
+        products.sort(Comparator.comparing(Product::getProductId));
+        Snapshot loaded = new Snapshot(loadedVersion, products);
+
+        // Only publish if nothing changed while we were reading
+        synchronized (publishLock) {
+            if (version.get() == loadedVersion) {
+                snapshot = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    // Immutable view of the catalog at a given version
+    public static class Snapshot {
+        private final long version;
+        private final List<Product> all;
+        private final Map<Long, Product> byId;
+        private final Map<String, List<Product>> byType;
+        private final Map<String, List<Product>> byCategory;
+        private final Map<String, Map<String, List<Product>>> byTypeAndCategory;
+
+        Snapshot(long version, List<Product> products) {
+            this.version = version;
+            this.all = Collections.unmodifiableList(products);
+
+            Map<Long, Product> ids = new HashMap<>();
+            Map<String, List<Product>> types = new HashMap<>();
+            Map<String, List<Product>> categories = new HashMap<>();
+            Map<String, Map<String, List<Product>>> typeCategories = new HashMap<>();
+
+            for (Product product : products) {
+                ids.put(product.getProductId(), product);
+                if (product.getType() != null) {
+                    types.computeIfAbsent(product.getType(), k -> new ArrayList<>()).add(product);
+                    if (product.getCategory() != null) {
+                        typeCategories.computeIfAbsent(product.getType(), k -> new LinkedHashMap<>())
+                                .computeIfAbsent(product.getCategory(), k -> new ArrayList<>())
+                                .add(product);
+                    }
+                }
+                if (product.getCategory() != null) {
+                    categories.computeIfAbsent(product.getCategory(), k -> new ArrayList<>()).add(product);
+                }
+            }
+
+            this.byId = Collections.unmodifiableMap(ids);
+            this.byType = freeze(types);
+            this.byCategory = freeze(categories);
+            Map<String, Map<String, List<Product>>> frozen = new HashMap<>();
+            typeCategories.forEach((type, perCategory) -> frozen.put(type, freeze(perCategory)));
+            this.byTypeAndCategory = Collections.unmodifiableMap(frozen);
+        }
+
+        private static Map<String, List<Product>> freeze(Map<String, List<Product>> source) {
+            Map<String, List<Product>> copy = new LinkedHashMap<>();
+            source.forEach((key, list) -> copy.put(key, Collections.unmodifiableList(list)));
+            return Collections.unmodifiableMap(copy);
+        }
+
+        public long getVersion() { return version; }
+
+        public List<Product> getAll() { return all; }
+
+        public Product getById(Long id) { return byId.get(id); }
+
+        public List<Product> getByType(String type) {
+            return byType.getOrDefault(type, Collections.emptyList());
+        }
+
+        public List<Product> getByCategory(String category) {
+            return byCategory.getOrDefault(category, Collections.emptyList());
+        }
+
+        public List<Product> getByTypeAndCategory(String type, String category) {
+            return byTypeAndCategory.getOrDefault(type, Collections.emptyMap())
+                    .getOrDefault(category, Collections.emptyList());
+        }
+    }
+}
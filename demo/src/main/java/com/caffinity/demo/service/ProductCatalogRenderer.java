@@ -0,0 +1,108 @@
+package com.caffinity.demo.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.caffinity.demo.entity.Product;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Renders the catalog JSON once per catalog version so the menu endpoints can
+// write pre-built byte arrays instead of running Jackson on every request.
+@Component
+public class ProductCatalogRenderer {
+
+    public static final String VIEW_ALL = "all";
+    public static final String VIEW_COFFEE = "coffee";
+    public static final String VIEW_DESSERTS = "desserts";
+
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private volatile RenderedCatalog rendered;
+
+    public RenderedView getView(String view) {
+        return getView(catalogCache.get(), view);
+    }
+
+    // The view as of a given snapshot, so callers can pair the bytes with that snapshot's ETag
+    public RenderedView getView(ProductCatalogCache.Snapshot snapshot, String view) {
+        RenderedCatalog current = rendered;
+        if (current == null || current.version != snapshot.getVersion()) {
+            current = render(snapshot);
+        }
+        switch (view) {
+            case VIEW_COFFEE: return current.coffee;
+            case VIEW_DESSERTS: return current.desserts;
+            default: return current.all;
+        }
+    }
+
+    private synchronized RenderedCatalog render(ProductCatalogCache.Snapshot snapshot) {
+        RenderedCatalog current = rendered;
+        if (current != null && current.version == snapshot.getVersion()) {
+            return current;
+        }
+        RenderedCatalog fresh = new RenderedCatalog(
+                snapshot.getVersion(),
+                renderView(snapshot.getAll()),
+                renderView(snapshot.getByType("coffee")),
+                renderView(snapshot.getByType("dessert")));
+        // An older snapshot can still be rendered for its caller, but never replaces a newer rendering
+        if (current == null || current.version < fresh.version) {
+            rendered = fresh;
+        }
+        return fresh;
+    }
+
+    private RenderedView renderView(List<Product> products) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(products);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+                gzip.write(json);
+            }
+            return new RenderedView(json, buffer.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to render product catalog", e);
+        }
+    }
+
+    private static class RenderedCatalog {
+        private final long version;
+        private final RenderedView all;
+        private final RenderedView coffee;
+        private final RenderedView desserts;
+
+        RenderedCatalog(long version, RenderedView all, RenderedView coffee, RenderedView desserts) {
+            this.version = version;
+            this.all = all;
+            this.coffee = coffee;
+            this.desserts = desserts;
+        }
+    }
+
+    // Plain and gzip encodings of one catalog view. The arrays are shared between
+    // requests and must never be modified.
+    public static class RenderedView {
+        private final byte[] json;
+        private final byte[] gzip;
+
+        RenderedView(byte[] json, byte[] gzip) {
+            this.json = json;
+            this.gzip = gzip;
+        }
+
+        public byte[] getJson() { return json; }
+
+        public byte[] getGzip() { return gzip; }
+    }
+}
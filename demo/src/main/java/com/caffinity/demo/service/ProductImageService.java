@@ -0,0 +1,214 @@
+package com.caffinity.demo.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.caffinity.demo.entity.Product;
+import com.caffinity.demo.repository.ProductRepository;
+
+// Generates resized variants of uploaded product images on a bounded background pool
+@Service
+public class ProductImageService {
+
+    public static final String THUMBNAIL_SUFFIX = "-thumb";
+    public static final String MEDIUM_SUFFIX = "-medium";
+
+    private static final String UPLOADS_PATH = "/uploads/";
+    private static final int THUMBNAIL_WIDTH = 200;
+    private static final int MEDIUM_WIDTH = 600;
+    private static final float JPEG_QUALITY = 0.82f;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
+    @Autowired
+    @Qualifier("imageProcessingExecutor")
+    private ThreadPoolExecutor executor;
+
+    @Value("${file.upload-dir:src/uploads}")
+    private String uploadDir;
+
+    // WebP is only available when an ImageIO plugin for it is on the classpath
+    private final String preferredFormat = ImageIO.getImageWritersByFormatName("webp").hasNext() ? "webp" : null;
+
+    // Queue variant generation for a saved product. Safe to call from the request thread.
+    public void scheduleVariants(Product product) {
+        if (product == null || product.getProductId() == null || localFileName(product.getImageUrl()) == null) {
+            return;
+        }
+        Long productId = product.getProductId();
+        String imageUrl = product.getImageUrl();
+        try {
+            executor.execute(() -> generateVariants(productId, imageUrl));
+        } catch (RejectedExecutionException e) {
+            // Variants are optional; the product falls back to the original image
+            System.err.println("⚠️ Image processing queue full, skipping variants for product " + productId);
+        }
+    }
+
+    // Products uploaded before variants existed get them generated once at startup
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillMissingVariants() {
+        List<Product> pending = productRepository.findMissingImageVariants();
+        if (!pending.isEmpty()) {
+            System.out.println("🖼️ Scheduling image variants for " + pending.size() + " products");
+            pending.forEach(this::scheduleVariants);
+        }
+    }
+
+    private void generateVariants(Long productId, String imageUrl) {
+        String fileName = localFileName(imageUrl);
+        Path original = Paths.get(uploadDir).resolve(fileName);
+        try {
+            if (!Files.exists(original)) {
+                System.err.println("⚠️ Original image missing for product " + productId + ": " + original);
+                return;
+            }
+            BufferedImage source = ImageIO.read(original.toFile());
+            if (source == null) {
+                System.err.println("⚠️ Unsupported image format for product " + productId + ": " + fileName);
+                return;
+            }
+
+            String thumbnailName = writeVariant(source, fileName, THUMBNAIL_SUFFIX, THUMBNAIL_WIDTH);
+            String mediumName = writeVariant(source, fileName, MEDIUM_SUFFIX, MEDIUM_WIDTH);
+
+            String baseUrl = imageUrl.substring(0, imageUrl.lastIndexOf('/') + 1);
+            int updated = productRepository.updateImageVariants(
+                    productId, imageUrl, baseUrl + thumbnailName, baseUrl + mediumName);
+            if (updated > 0) {
+                catalogCache.invalidate();
+                System.out.println("🖼️ Image variants ready for product " + productId);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("❌ Failed to generate image variants for product " + productId + ": " + e.getMessage());
+        }
+    }
+
+    private String writeVariant(BufferedImage source, String fileName, String suffix, int maxWidth) throws IOException {
+        boolean alpha = source.getColorModel().hasAlpha();
+        String format = preferredFormat != null ? preferredFormat : (alpha ? "png" : "jpg");
+        String variantName = variantFileName(fileName, suffix, format);
+
+        Path target = Paths.get(uploadDir).resolve(variantName);
+        if (Files.exists(target)) {
+            return variantName;
+        }
+
+        BufferedImage resized = resize(source, maxWidth, alpha);
+        Path temp = Files.createTempFile(Paths.get(uploadDir), ".variant-", ".tmp");
+        try {
+            write(resized, format, temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return variantName;
+    }
+
+    // Downscale in halving steps; a single bilinear pass looks poor for big reductions
+    private BufferedImage resize(BufferedImage source, int maxWidth, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        int targetWidth = Math.min(maxWidth, source.getWidth());
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * (targetWidth / (double) source.getWidth())));
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+
+            BufferedImage step = new BufferedImage(width, height, type);
+            Graphics2D g = step.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = step;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private void write(BufferedImage image, String format, Path target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for " + format);
+        }
+        ImageWriter writer = writers.next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && !"png".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null && param.getCompressionTypes().length > 0) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // Remove every variant of a stored original, whatever format it was written in
+    public void deleteVariants(String fileName) throws IOException {
+        for (String suffix : new String[] { THUMBNAIL_SUFFIX, MEDIUM_SUFFIX }) {
+            for (String format : new String[] { "webp", "jpg", "png" }) {
+                Files.deleteIfExists(Paths.get(uploadDir).resolve(variantFileName(fileName, suffix, format)));
+            }
+        }
+    }
+
+    // Keeps the original's extension (h.jpeg-thumb.jpg): the same bytes saved as h.jpg and h.jpeg
+    // are separate originals and must not share, or delete, each other's variants
+    static String variantFileName(String fileName, String suffix, String format) {
+        return fileName + suffix + "." + format;
+    }
+
+    // File name under the upload directory, or null for images hosted elsewhere
+    public static String localFileName(String imageUrl) {
+        if (imageUrl == null) {
+            return null;
+        }
+        int index = imageUrl.indexOf(UPLOADS_PATH);
+        if (index < 0) {
+            return null;
+        }
+        String fileName = imageUrl.substring(index + UPLOADS_PATH.length());
+        if (fileName.isEmpty() || fileName.contains("/") || fileName.contains("..")) {
+            return null;
+        }
+        return fileName;
+    }
+}
@@ -0,0 +1,447 @@
+package com.caffinity.demo.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.caffinity.demo.repository.ProductRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Streaming bulk import of products from CSV or NDJSON.
+// Rows are parsed one at a time and written with JDBC batch statements, one transaction per chunk,
+// so Hibernate's IDENTITY id strategy (which disables insert batching) is not involved.
+@Service
+public class ProductImportService {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO products (name, description, price, type, category, image_url) VALUES (?, ?, ?, ?, ?, ?)";
+
+    // Rows that carry a product ID update that product, or create it with that ID.
+    // Assignments run left to right, so the variants are compared against the old image_url
+    // and cleared when it changes; they are regenerated after the chunk commits.
+    private static final String UPSERT_SQL =
+            "INSERT INTO products (product_id, name, description, price, type, category, image_url) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE name = VALUES(name), description = VALUES(description), " +
+            "price = VALUES(price), type = VALUES(type), category = VALUES(category), " +
+            "thumbnail_url = IF(image_url <=> VALUES(image_url), thumbnail_url, NULL), " +
+            "medium_url = IF(image_url <=> VALUES(image_url), medium_url, NULL), " +
+            "image_url = VALUES(image_url)";
+
+    // Locking read of the images the upserts are about to replace
+    private static final String CURRENT_IMAGES_SQL =
+            "SELECT product_id, image_url FROM products WHERE product_id IN (%s) FOR UPDATE";
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductImageService productImageService;
+
+    @Value("${product.import.chunk-size:500}")
+    private int chunkSize;
+
+    // A read or parse failure partway through stops the import; chunks already written stay
+    // imported and the report says where it stopped
+    public ImportResult importCsv(InputStream input) {
+        ImportResult result = new ImportResult();
+        List<ImportRow> chunk = new ArrayList<>();
+        int lastLine = 0;
+        try (CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)))) {
+            List<String> header = reader.next();
+            if (header == null) {
+                return result;
+            }
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(normalizeColumn(header.get(i)), i);
+            }
+
+            List<String> record;
+            while ((record = reader.next()) != null) {
+                int line = reader.getRecordLine();
+                lastLine = line;
+                if (record.size() == 1 && record.get(0).trim().isEmpty()) {
+                    continue;
+                }
+                result.rowsRead++;
+                Map<String, String> values = new HashMap<>();
+                for (Map.Entry<String, Integer> column : columns.entrySet()) {
+                    if (column.getValue() < record.size()) {
+                        values.put(column.getKey(), record.get(column.getValue()));
+                    }
+                }
+                accept(toRow(line, values, result), chunk, result);
+            }
+        } catch (IOException e) {
+            result.stop(lastLine, e);
+        }
+        flush(chunk, result);
+        return result;
+    }
+
+    public ImportResult importNdjson(InputStream input) {
+        ImportResult result = new ImportResult();
+        List<ImportRow> chunk = new ArrayList<>();
+        int line = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.trim().isEmpty()) {
+                    continue;
+                }
+                result.rowsRead++;
+                Map<String, String> values = new HashMap<>();
+                try {
+                    JsonNode node = objectMapper.readTree(text);
+                    if (node == null || !node.isObject()) {
+                        result.addError(line, "Line is not a JSON object");
+                        continue;
+                    }
+                    node.fields().forEachRemaining(field -> {
+                        if (!field.getValue().isNull()) {
+                            values.put(normalizeColumn(field.getKey()), field.getValue().asText());
+                        }
+                    });
+                } catch (JsonProcessingException e) {
+                    result.addError(line, "Invalid JSON: " + e.getOriginalMessage());
+                    continue;
+                }
+                accept(toRow(line, values, result), chunk, result);
+            }
+        } catch (IOException e) {
+            result.stop(line, e);
+        }
+        flush(chunk, result);
+        return result;
+    }
+
+    private void accept(ImportRow row, List<ImportRow> chunk, ImportResult result) {
+        if (row == null) {
+            return;
+        }
+        chunk.add(row);
+        if (chunk.size() >= chunkSize) {
+            flush(chunk, result);
+        }
+    }
+
+    // Validate one row; returns null (and records the error) when it can't be imported
+    private ImportRow toRow(int line, Map<String, String> values, ImportResult result) {
+        ImportRow row = new ImportRow();
+        row.line = line;
+        row.name = trimToNull(values.get("name"));
+        row.description = trimToNull(values.get("description"));
+        row.type = trimToNull(values.get("type"));
+        row.category = trimToNull(values.get("category"));
+        row.imageUrl = trimToNull(values.get("imageurl"));
+
+        if (row.name == null) {
+            result.addError(line, "name is required");
+            return null;
+        }
+        if (row.name.length() > 255) {
+            result.addError(line, "name is longer than 255 characters");
+            return null;
+        }
+        if (row.description != null && row.description.length() > 500) {
+            result.addError(line, "description is longer than 500 characters");
+            return null;
+        }
+        if (row.type == null) {
+            result.addError(line, "type is required");
+            return null;
+        }
+        row.type = row.type.toLowerCase(Locale.ROOT);
+        if (!row.type.equals("coffee") && !row.type.equals("dessert")) {
+            result.addError(line, "type must be 'coffee' or 'dessert'");
+            return null;
+        }
+        try {
+            row.price = Double.valueOf(values.getOrDefault("price", "").trim());
+        } catch (NumberFormatException e) {
+            result.addError(line, "price is not a number");
+            return null;
+        }
+        if (!Double.isFinite(row.price) || row.price <= 0) {
+            result.addError(line, "price must be greater than zero");
+            return null;
+        }
+        String productId = trimToNull(values.get("productid"));
+        if (productId != null) {
+            try {
+                row.productId = Long.valueOf(productId);
+            } catch (NumberFormatException e) {
+                result.addError(line, "productId is not a number");
+                return null;
+            }
+        }
+        return row;
+    }
+
+    // Write one chunk in its own transaction. If the database rejects it, the whole chunk is
+    // reported as failed and the import carries on with the next one.
+    private void flush(List<ImportRow> chunk, ImportResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> upserts = new ArrayList<>();
+        for (ImportRow row : chunk) {
+            if (row.productId == null) {
+                inserts.add(new Object[] { row.name, row.description, row.price, row.type, row.category, row.imageUrl });
+            } else {
+                upserts.add(new Object[] { row.productId, row.name, row.description, row.price, row.type, row.category, row.imageUrl });
+            }
+        }
+
+        try {
+            List<String> replacedImages = transactionTemplate.execute(status -> {
+                if (!inserts.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+                }
+                if (upserts.isEmpty()) {
+                    return List.<String>of();
+                }
+                List<String> replaced = findReplacedImages(upserts);
+                jdbcTemplate.batchUpdate(UPSERT_SQL, upserts);
+                return replaced;
+            });
+            result.rowsImported += chunk.size();
+            result.replacedImageUrls.addAll(replacedImages);
+            scheduleMissingVariants(upserts);
+        } catch (DataAccessException e) {
+            String message = "Chunk failed, rows not imported: " + e.getMostSpecificCause().getMessage();
+            for (ImportRow row : chunk) {
+                result.addError(row.line, message);
+            }
+            System.err.println("❌ Product import chunk failed: " + e.getMessage());
+        }
+        chunk.clear();
+    }
+
+    // Current image URLs that the upserts will overwrite with a different one
+    private List<String> findReplacedImages(List<Object[]> upserts) {
+        Map<Long, String> newImages = new HashMap<>();
+        for (Object[] upsert : upserts) {
+            newImages.put((Long) upsert[0], (String) upsert[6]);
+        }
+        String sql = String.format(CURRENT_IMAGES_SQL, String.join(",", Collections.nCopies(newImages.size(), "?")));
+        List<String> replaced = new ArrayList<>();
+        jdbcTemplate.query(sql, rs -> {
+            String current = rs.getString("image_url");
+            if (current != null && !current.equals(newImages.get(rs.getLong("product_id")))) {
+                replaced.add(current);
+            }
+        }, newImages.keySet().toArray());
+        return replaced;
+    }
+
+    // Upserted rows whose image changed had their variants cleared; queue them again
+    private void scheduleMissingVariants(List<Object[]> upserts) {
+        if (upserts.isEmpty()) {
+            return;
+        }
+        List<Long> productIds = new ArrayList<>(upserts.size());
+        for (Object[] upsert : upserts) {
+            productIds.add((Long) upsert[0]);
+        }
+        try {
+            productRepository.findMissingImageVariantsByIds(productIds).forEach(productImageService::scheduleVariants);
+        } catch (DataAccessException e) {
+            // The startup backfill picks these up later
+            System.err.println("⚠️ Could not queue image variants for imported products: " + e.getMessage());
+        }
+    }
+
+    private static String normalizeColumn(String column) {
+        return column == null ? "" : column.trim().toLowerCase(Locale.ROOT).replace("_", "");
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static class ImportRow {
+        private int line;
+        private Long productId;
+        private String name;
+        private String description;
+        private Double price;
+        private String type;
+        private String category;
+        private String imageUrl;
+    }
+
+    // Minimal RFC 4180 reader: quoted fields may contain commas, doubled quotes and line breaks
+    private static class CsvReader implements AutoCloseable {
+        private final Reader reader;
+        private int line = 1;
+        private int recordLine;
+        private int pushback = -2;
+
+        CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        int getRecordLine() { return recordLine; }
+
+        List<String> next() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            recordLine = line;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("Unterminated quoted field starting on line " + recordLine);
+                    }
+                    if (c == '"') {
+                        int next = read();
+                        if (next == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = next;
+                            continue;
+                        }
+                    } else {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c == -1) {
+                    break;
+                } else if (c == '\r') {
+                    int next = read();
+                    if (next != '\n') {
+                        unread(next);
+                    }
+                    break;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+
+        private int read() throws IOException {
+            int c;
+            if (pushback != -2) {
+                c = pushback;
+                pushback = -2;
+            } else {
+                c = reader.read();
+            }
+            if (c == '\n') {
+                line++;
+            }
+            return c;
+        }
+
+        private void unread(int c) {
+            if (c == '\n') {
+                line--;
+            }
+            pushback = c;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    // Helper class for the import report
+    public static class ImportResult {
+        private int rowsRead;
+        private int rowsImported;
+        private int rowsFailed;
+        private String error;
+        private final List<RowError> errors = new ArrayList<>();
+        // Images no product uses once the import is done; released by ProductService, not reported
+        private final List<String> replacedImageUrls = new ArrayList<>();
+
+        void addError(int line, String message) {
+            rowsFailed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new RowError(line, message));
+            }
+        }
+
+        void stop(int line, IOException e) {
+            error = "Import stopped after line " + line + ": " + e.getMessage();
+            System.err.println("❌ Product import stopped: " + error);
+        }
+
+        List<String> replacedImageUrls() { return replacedImageUrls; }
+
+        public int getRowsRead() { return rowsRead; }
+
+        public int getRowsImported() { return rowsImported; }
+
+        public int getRowsFailed() { return rowsFailed; }
+
+        // Set when the input could not be read to the end
+        public String getError() { return error; }
+
+        public List<RowError> getErrors() { return errors; }
+    }
+
+    public static class RowError {
+        private final int line;
+        private final String message;
+
+        RowError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public int getLine() { return line; }
+
+        public String getMessage() { return message; }
+    }
+}
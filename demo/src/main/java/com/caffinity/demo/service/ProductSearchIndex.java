@@ -0,0 +1,315 @@
+package com.caffinity.demo.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.caffinity.demo.entity.Product;
+
+// In-process inverted index plus prefix trie over product name, category and description.
+// Built lazily from the catalog cache and kept up to date incrementally on product changes.
+@Component
+public class ProductSearchIndex {
+
+    private static final float NAME_WEIGHT = 3.0f;
+    private static final float CATEGORY_WEIGHT = 2.0f;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+
+    // A prefix match counts for less than typing the whole word
+    private static final float PREFIX_FACTOR = 0.5f;
+    private static final int MAX_PREFIX_TERMS = 50;
+
+    @Autowired
+    private ProductCatalogCache catalogCache;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // term -> (productId -> field-weighted score)
+    private final Map<String, Map<Long, Float>> postings = new HashMap<>();
+
+    // productId -> terms, so a product can be removed without scanning every posting list
+    private final Map<Long, Set<String>> documentTerms = new HashMap<>();
+
+    private final TrieNode trie = new TrieNode();
+
+    private boolean built;
+
+    public List<Product> search(String query, int limit) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        ensureBuilt();
+
+        Map<Long, Float> scores;
+        lock.readLock().lock();
+        try {
+            scores = null;
+            for (int i = 0; i < tokens.size(); i++) {
+                // The last token may still be being typed, so expand it as a prefix
+                boolean last = i == tokens.size() - 1;
+                Map<Long, Float> tokenScores = scoreToken(tokens.get(i), last);
+
+                // Every token has to match (AND semantics)
+                if (scores == null) {
+                    scores = tokenScores;
+                } else {
+                    Map<Long, Float> combined = new HashMap<>();
+                    for (Map.Entry<Long, Float> entry : scores.entrySet()) {
+                        Float other = tokenScores.get(entry.getKey());
+                        if (other != null) {
+                            combined.put(entry.getKey(), entry.getValue() + other);
+                        }
+                    }
+                    scores = combined;
+                }
+                if (scores.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        ProductCatalogCache.Snapshot snapshot = catalogCache.get();
+        String phrase = String.join(" ", tokens);
+        List<Product> matches = new ArrayList<>();
+        Map<Long, Float> ranked = new HashMap<>();
+        for (Map.Entry<Long, Float> entry : scores.entrySet()) {
+            Product product = snapshot.getById(entry.getKey());
+            // Retired products stay indexed but aren't offered to customers
+            if (product == null || Boolean.FALSE.equals(product.getAvailable())) {
+                continue;
+            }
+            float score = entry.getValue();
+            // Names that start with what was typed float to the top
+            if (product.getName() != null && product.getName().toLowerCase().startsWith(phrase)) {
+                score += NAME_WEIGHT;
+            }
+            ranked.put(product.getProductId(), score);
+            matches.add(product);
+        }
+
+        matches.sort((a, b) -> {
+            int byScore = Float.compare(ranked.get(b.getProductId()), ranked.get(a.getProductId()));
+            if (byScore != 0) {
+                return byScore;
+            }
+            return String.valueOf(a.getName()).compareToIgnoreCase(String.valueOf(b.getName()));
+        });
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    // Add or replace a product in the index
+    public void index(Product product) {
+        lock.writeLock().lock();
+        try {
+            // Nothing to do until the first search builds the whole index
+            if (!built) {
+                return;
+            }
+            removeInternal(product.getProductId());
+            addInternal(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long productId) {
+        lock.writeLock().lock();
+        try {
+            if (built) {
+                removeInternal(productId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Throw the index away; it is rebuilt from the catalog on the next search
+    public void reset() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documentTerms.clear();
+            trie.children.clear();
+            built = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureBuilt() {
+        lock.readLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        ProductCatalogCache.Snapshot snapshot = catalogCache.get();
+        lock.writeLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+            postings.clear();
+            documentTerms.clear();
+            trie.children.clear();
+            for (Product product : snapshot.getAll()) {
+                addInternal(product);
+            }
+            // Updates that arrived while we were loading were skipped, so if the catalog
+            // moved on in the meantime, build again on the next search
+            built = catalogCache.getVersion() == snapshot.getVersion();
+            System.out.println("🔎 Product search index built with " + documentTerms.size() + " products");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Map<Long, Float> scoreToken(String token, boolean prefix) {
+        Map<Long, Float> result = new HashMap<>();
+        Map<Long, Float> exact = postings.get(token);
+        if (exact != null) {
+            result.putAll(exact);
+        }
+        if (prefix) {
+            for (String term : trie.termsWithPrefix(token, MAX_PREFIX_TERMS)) {
+                if (term.equals(token)) {
+                    continue;
+                }
+                for (Map.Entry<Long, Float> entry : postings.getOrDefault(term, Collections.emptyMap()).entrySet()) {
+                    // Keep the best match for the product rather than summing every expansion
+                    result.merge(entry.getKey(), entry.getValue() * PREFIX_FACTOR, Math::max);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void addInternal(Product product) {
+        if (product.getProductId() == null) {
+            return;
+        }
+        Map<String, Float> termScores = new TreeMap<>();
+        addField(termScores, product.getName(), NAME_WEIGHT);
+        addField(termScores, product.getCategory(), CATEGORY_WEIGHT);
+        addField(termScores, product.getDescription(), DESCRIPTION_WEIGHT);
+
+        for (Map.Entry<String, Float> entry : termScores.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>())
+                    .put(product.getProductId(), entry.getValue());
+            trie.insert(entry.getKey());
+        }
+        documentTerms.put(product.getProductId(), new HashSet<>(termScores.keySet()));
+    }
+
+    private void removeInternal(Long productId) {
+        Set<String> terms = documentTerms.remove(productId);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<Long, Float> posting = postings.get(term);
+            if (posting == null) {
+                continue;
+            }
+            posting.remove(productId);
+            if (posting.isEmpty()) {
+                postings.remove(term);
+                trie.delete(term);
+            }
+        }
+    }
+
+    private static void addField(Map<String, Float> termScores, String text, float weight) {
+        // Count each term once per field, so long descriptions don't drown out the name
+        for (String term : new LinkedHashSet<>(tokenize(text))) {
+            termScores.merge(term, weight, Float::sum);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    // Character trie over indexed terms, used for search-as-you-type prefix expansion
+    private static class TrieNode {
+        private final Map<Character, TrieNode> children = new TreeMap<>();
+        private String term;
+
+        void insert(String word) {
+            TrieNode node = this;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.children.computeIfAbsent(word.charAt(i), k -> new TrieNode());
+            }
+            node.term = word;
+        }
+
+        void delete(String word) {
+            TrieNode node = find(word);
+            if (node != null) {
+                node.term = null;
+            }
+        }
+
+        List<String> termsWithPrefix(String prefix, int max) {
+            List<String> terms = new ArrayList<>();
+            TrieNode start = find(prefix);
+            if (start == null) {
+                return terms;
+            }
+            // Breadth-first so shorter (closer) completions are collected first
+            Deque<TrieNode> queue = new ArrayDeque<>();
+            queue.add(start);
+            while (!queue.isEmpty() && terms.size() < max) {
+                TrieNode node = queue.poll();
+                if (node.term != null) {
+                    terms.add(node.term);
+                }
+                queue.addAll(node.children.values());
+            }
+            return terms;
+        }
+
+        private TrieNode find(String word) {
+            TrieNode node = this;
+            for (int i = 0; i < word.length() && node != null; i++) {
+                node = node.children.get(word.charAt(i));
+            }
+            return node;
+        }
+    }
+}
@@ -1,20 +1,31 @@
 package com.caffinity.demo.service;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.caffinity.demo.entity.CartItem;
 import com.caffinity.demo.entity.Product;
 import com.caffinity.demo.repository.CartItemRepository;
 import com.caffinity.demo.repository.ProductRepository;
@@ -28,126 +39,184 @@ public class ProductService {
     @Autowired
     private CartItemRepository cartItemRepository;
     
+    @Autowired
+    private ProductCatalogCache catalogCache;
+    
+    @Autowired
+    private ProductCatalogRenderer catalogRenderer;
+    
+    @Autowired
+    private ProductSearchIndex searchIndex;
+    
+    @Autowired
+    private ProductImageService productImageService;
+    
+    @Autowired
+    private ProductImportService productImportService;
+    
+    @Autowired
+    private CartWriteBehindStore cartStore;
+    
     @Value("${file.upload-dir:src/uploads}")
     private String uploadDir;
     
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_MULTI_GET_IDS = 500;
+    
+    // 128 bits of SHA-256 is plenty to tell product photos apart
+    private static final int CONTENT_HASH_BYTES = 16;
+    private static final long IMAGE_RELEASE_GRACE_MS = 10 * 60 * 1000L;
+    
+    private final Object imageFileLock = new Object();
+    private final Map<String, Long> recentlyIssuedImages = new ConcurrentHashMap<>();
+    
+    // Catalog reads are served from the in-memory cache
     public List<Product> getAllProducts() {
-        return productRepository.findAll();
+        return catalogCache.get().getAll();
     }
     
     public List<Product> getProductsByType(String type) {
-        return productRepository.findByType(type);
+        return catalogCache.get().getByType(type);
+    }
+    
+    public List<Product> getProductsByTypeAndCategory(String type, String category) {
+        return catalogCache.get().getByTypeAndCategory(type, category);
     }
     
     public List<Product> getCoffeeProducts() {
-        return productRepository.findByType("coffee");
+        return catalogCache.get().getByType("coffee");
     }
     
     public List<Product> getDessertProducts() {
-        return productRepository.findByType("dessert");
+        return catalogCache.get().getByType("dessert");
     }
     
     public Optional<Product> getProductById(Long id) {
+        return Optional.ofNullable(catalogCache.get().getById(id));
+    }
+    
+    // Resolve many products in one call, in request order, reporting the IDs that don't exist.
+    // Served from the catalog cache, which is the in-memory form of findByProductIds.
+    public ProductLookup getProductsByIds(List<Long> ids) {
+        if (ids.size() > MAX_MULTI_GET_IDS) {
+            throw new IllegalArgumentException("At most " + MAX_MULTI_GET_IDS + " product IDs per request");
+        }
+        ProductCatalogCache.Snapshot snapshot = catalogCache.get();
+        List<Product> products = new ArrayList<>(ids.size());
+        List<Long> missingIds = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (Long id : ids) {
+            if (id == null || !seen.add(id)) {
+                continue;
+            }
+            Product product = snapshot.getById(id);
+            if (product != null) {
+                products.add(product);
+            } else {
+                missingIds.add(id);
+            }
+        }
+        return new ProductLookup(products, missingIds);
+    }
+    
+    // One snapshot per catalog request, so the ETag and the body describe the same state
+    public ProductCatalogCache.Snapshot getCatalogSnapshot() {
+        return catalogCache.get();
+    }
+    
+    public String getCatalogTag(ProductCatalogCache.Snapshot snapshot) {
+        return catalogCache.getTag(snapshot);
+    }
+    
+    // Pre-serialized JSON (and gzip) for one of the catalog views
+    public ProductCatalogRenderer.RenderedView getRenderedCatalog(ProductCatalogCache.Snapshot snapshot, String view) {
+        return catalogRenderer.getView(snapshot, view);
+    }
+    
+    // Keyset pagination: fetch one extra row to know whether another page exists
+    public ProductPage getProductPage(Long cursor, int size, String type, String category,
+                                      Double minPrice, Double maxPrice) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        long afterId = cursor != null ? cursor : 0L;
+        
+        List<Product> rows = productRepository.findPageAfter(
+                afterId, blankToNull(type), blankToNull(category), minPrice, maxPrice,
+                PageRequest.of(0, pageSize + 1));
+        
+        boolean hasMore = rows.size() > pageSize;
+        List<Product> items = hasMore ? rows.subList(0, pageSize) : rows;
+        Long nextCursor = hasMore ? items.get(items.size() - 1).getProductId() : null;
+        return new ProductPage(items, nextCursor, pageSize);
+    }
+    
+    private static String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+    
+    // Cached products are shared between requests, so anything that is going to be
+    // modified and saved must be loaded fresh from the database
+    public Optional<Product> getProductForUpdate(Long id) {
         return productRepository.findByProductId(id);
     }
     
     public Product saveProduct(Product product) {
-        return productRepository.save(product);
+        if (product.getAvailable() == null) {
+            product.setAvailable(true);
+        }
+        Product saved = productRepository.save(product);
+        catalogCache.invalidate();
+        TransactionCallbacks.afterCommit(() -> searchIndex.index(saved));
+        return saved;
     }
     
-    // UPDATED METHOD WITH COMPREHENSIVE DEBUGGING
-    @Transactional
-    public void deleteProduct(Long id) {
+    // Bulk import from CSV or NDJSON; the catalog cache and search index are rebuilt afterwards,
+    // and images that imported rows replaced are released as updateProduct does
+    public ProductImportService.ImportResult importProducts(InputStream input, boolean ndjson) {
         try {
-            System.out.println("=== STARTING PRODUCT DELETION FOR ID: " + id + " ===");
-            
-            // First, check if product exists
-            Optional<Product> product = productRepository.findByProductId(id);
-            if (!product.isPresent()) {
-                System.err.println("❌ Product not found with ID: " + id);
-                throw new RuntimeException("Product not found with ID: " + id);
-            }
-            System.out.println("✅ Product found: " + product.get().getName());
-            
-            // Find and display cart items before deletion
-            System.out.println("🔍 Searching for cart items with product ID: " + id);
-            List<CartItem> cartItems = cartItemRepository.findByProductId(id);
-            System.out.println("📦 Found " + cartItems.size() + " cart items to delete");
-            
-            if (!cartItems.isEmpty()) {
-                cartItems.forEach(item -> 
-                    System.out.println("   - Cart Item ID: " + item.getCartItemId() + ", Cart ID: " + 
-                        (item.getCart() != null ? item.getCart().getCartId() : "null")));
-                
-                // Delete all cart items that reference this product
-                System.out.println("🗑️ Deleting cart items using repository method...");
-                cartItemRepository.deleteByProductId(id);
-                System.out.println("✅ Cart items deleted successfully using repository method");
-            } else {
-                System.out.println("✅ No cart items found for this product");
-            }
-            
-            // Verify cart items are gone
-            List<CartItem> remainingItems = cartItemRepository.findByProductId(id);
-            System.out.println("🔍 Verification: " + remainingItems.size() + " cart items remaining after deletion");
-            
-            // Then delete the product
-            System.out.println("🗑️ Deleting product from database...");
-            productRepository.deleteById(id);
-            System.out.println("✅ Product deleted successfully from database");
-            
-            System.out.println("=== PRODUCT DELETION COMPLETED SUCCESSFULLY ===");
-            
-        } catch (Exception e) {
-            System.err.println("❌ ERROR deleting product with ID " + id + ": " + e.getMessage());
-            System.err.println("❌ Error type: " + e.getClass().getName());
-            System.err.println("❌ Stack trace:");
-            e.printStackTrace();
-            
-            // Try alternative approach if the first one fails
-            try {
-                System.out.println("🔄 Attempting alternative deletion approach...");
-                alternativeDeleteProduct(id);
-            } catch (Exception altException) {
-                System.err.println("❌ Alternative approach also failed: " + altException.getMessage());
-                throw new RuntimeException("Failed to delete product after multiple attempts: " + e.getMessage(), e);
-            }
+            ProductImportService.ImportResult result = ndjson
+                    ? productImportService.importNdjson(input) : productImportService.importCsv(input);
+            result.replacedImageUrls().forEach(this::releaseImage);
+            return result;
+        } finally {
+            catalogCache.invalidate();
+            searchIndex.reset();
         }
     }
     
-    // Alternative deletion method
+    // Ranked full-text search with prefix matching on the last word (search-as-you-type)
+    public List<Product> searchProducts(String query, int limit) {
+        return searchIndex.search(query, Math.min(limit, MAX_PAGE_SIZE));
+    }
+    
+    // Hard delete: two set-based statements however many carts hold the product.
+    // Products that appear in past orders can't be deleted; retire them instead.
     @Transactional
-    private void alternativeDeleteProduct(Long id) {
-        try {
-            System.out.println("=== ALTERNATIVE DELETION APPROACH ===");
-            
-            // Delete cart items using individual deletion
-            List<CartItem> cartItems = cartItemRepository.findByProductId(id);
-            System.out.println("Found " + cartItems.size() + " cart items for alternative deletion");
-            
-            if (!cartItems.isEmpty()) {
-                // Delete each cart item individually
-                for (CartItem cartItem : cartItems) {
-                    System.out.println("Deleting cart item individually: " + cartItem.getCartItemId());
-                    cartItemRepository.delete(cartItem);
-                }
-                System.out.println("All cart items deleted individually");
-                
-                // Flush to ensure deletions are committed
-                cartItemRepository.flush();
-            }
-            
-            // Now delete the product
-            System.out.println("Deleting product using alternative method...");
-            productRepository.deleteById(id);
-            productRepository.flush();
-            
-            System.out.println("✅ Alternative deletion completed successfully");
-            
-        } catch (Exception e) {
-            System.err.println("❌ Alternative deletion failed: " + e.getMessage());
-            throw e;
+    public void deleteProduct(Long id) {
+        String imageUrl = productRepository.findByProductId(id)
+                .orElseThrow(() -> new ProductNotFoundException(id))
+                .getImageUrl();
+        
+        int cartItemsRemoved = cartItemRepository.deleteByProductId(id);
+        productRepository.deleteByProductId(id);
+        
+        catalogCache.invalidate();
+        TransactionCallbacks.afterCommit(() -> searchIndex.remove(id));
+        TransactionCallbacks.afterCommit(() -> releaseImage(imageUrl));
+        // In-memory carts may still hold the deleted lines; the rest stay cached
+        TransactionCallbacks.afterCommit(() -> cartStore.evictCartsContaining(id));
+        System.out.println("🗑️ Deleted product " + id + " and " + cartItemsRemoved + " cart items");
+    }
+    
+    // Soft delete: a single-row UPDATE that leaves cart_items alone. Retired products stay in
+    // the catalog (and in existing carts) but can't be added to carts or ordered.
+    @Transactional
+    public void setProductAvailable(Long id, boolean available) {
+        if (productRepository.updateAvailability(id, available) == 0) {
+            throw new ProductNotFoundException(id);
         }
+        catalogCache.invalidate();
+        TransactionCallbacks.afterCommit(() -> productRepository.findByProductId(id).ifPresent(searchIndex::index));
+        System.out.println((available ? "✅ Restored" : "📦 Retired") + " product " + id);
     }
     
     public Product updateProduct(Long id, Product productDetails) {
@@ -158,37 +227,153 @@ public class ProductService {
             product.setDescription(productDetails.getDescription());
             product.setPrice(productDetails.getPrice());
             product.setCategory(productDetails.getCategory());
-            product.setImageUrl(productDetails.getImageUrl());
-            return productRepository.save(product);
+            String previousImageUrl = product.getImageUrl();
+            boolean imageChanged = !Objects.equals(previousImageUrl, productDetails.getImageUrl());
+            if (imageChanged) {
+                useNewImage(product, productDetails.getImageUrl());
+            }
+            Product saved = productRepository.save(product);
+            catalogCache.invalidate();
+            TransactionCallbacks.afterCommit(() -> searchIndex.index(saved));
+            if (imageChanged) {
+                productImageService.scheduleVariants(saved);
+                releaseImage(previousImageUrl);
+            }
+            return saved;
         }
         return null;
     }
     
-    // File upload method
+    // Point the product at a new original image; the old variants no longer apply
+    public void useNewImage(Product product, String imageUrl) {
+        product.setImageUrl(imageUrl);
+        product.setThumbnailUrl(null);
+        product.setMediumUrl(null);
+    }
+    
+    // Resize the product image in the background; the variant URLs appear once ready
+    public void scheduleImageVariants(Product product) {
+        productImageService.scheduleVariants(product);
+    }
+    
+    // File upload method - content-addressed: the file name is the SHA-256 of the bytes,
+    // so re-uploading the same photo reuses the stored file and its URL never changes meaning
     public String saveImage(MultipartFile file) throws IOException {
-        // Use hardcoded path instead of @Value property
-        String uploadDir = "src/uploads";
-        
         // Create uploads directory if it doesn't exist
         Path uploadPath = Paths.get(uploadDir);
         if (!Files.exists(uploadPath)) {
             Files.createDirectories(uploadPath);
         }
         
-        // Generate unique filename
         String originalFileName = file.getOriginalFilename();
         String fileExtension = "";
         if (originalFileName != null && originalFileName.contains(".")) {
-            fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
+            fileExtension = originalFileName.substring(originalFileName.lastIndexOf(".")).toLowerCase();
         }
-        String fileName = UUID.randomUUID().toString() + fileExtension;
         
-        // Save file
-        Path filePath = uploadPath.resolve(fileName);
-        Files.copy(file.getInputStream(), filePath);
+        // Hash while copying to a temp file, so the upload is only read once
+        MessageDigest digest = newSha256();
+        Path tempFile = Files.createTempFile(uploadPath, ".upload-", ".tmp");
+        try {
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String fileName = HexFormat.of().formatHex(digest.digest(), 0, CONTENT_HASH_BYTES) + fileExtension;
+            Path filePath = uploadPath.resolve(fileName);
+            
+            synchronized (imageFileLock) {
+                recentlyIssuedImages.put(fileName, System.currentTimeMillis());
+                if (Files.exists(filePath)) {
+                    System.out.println("♻️ Image already stored, reusing: " + fileName);
+                } else {
+                    Files.move(tempFile, filePath, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            
+            // Return the file path that can be served statically
+            // This will be accessible at http://localhost:8080/uploads/filename
+            return "http://localhost:8080/uploads/" + fileName;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+    
+    // Reference counting for stored images: once no product points at an image any more,
+    // the original and its variants are removed. Call after the referencing change is saved.
+    public void releaseImage(String imageUrl) {
+        String fileName = ProductImageService.localFileName(imageUrl);
+        if (fileName == null) {
+            return;
+        }
+        synchronized (imageFileLock) {
+            // A file handed out by a recent upload may belong to a product that isn't saved yet
+            long now = System.currentTimeMillis();
+            recentlyIssuedImages.values().removeIf(issuedAt -> now - issuedAt > IMAGE_RELEASE_GRACE_MS);
+            if (recentlyIssuedImages.containsKey(fileName)) {
+                return;
+            }
+            // The file is shared by every URL ending in /uploads/<name>, not just this exact string
+            String pattern = fileName.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+            if (productRepository.countByImageFileName(pattern) > 0) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(Paths.get(uploadDir).resolve(fileName));
+                productImageService.deleteVariants(fileName);
+                System.out.println("🗑️ Removed unreferenced image: " + fileName);
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not remove image " + fileName + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    // Helper class for paginated product listings
+    public static class ProductPage {
+        private final List<Product> items;
+        private final Long nextCursor;
+        private final int size;
         
-        // Return the file path that can be served statically
-        // This will be accessible at http://localhost:8080/uploads/filename
-        return "http://localhost:8080/uploads/" + fileName;
+        public ProductPage(List<Product> items, Long nextCursor, int size) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+            this.size = size;
+        }
+        
+        public List<Product> getItems() { return items; }
+        
+        // Pass back as ?cursor= to get the next page; null on the last page
+        public Long getNextCursor() { return nextCursor; }
+        
+        public int getSize() { return size; }
+    }
+    
+    // Helper class for multi-get results
+    public static class ProductLookup {
+        private final List<Product> products;
+        private final List<Long> missingIds;
+        
+        public ProductLookup(List<Product> products, List<Long> missingIds) {
+            this.products = products;
+            this.missingIds = missingIds;
+        }
+        
+        public List<Product> getProducts() { return products; }
+        
+        public List<Long> getMissingIds() { return missingIds; }
+    }
+    
+    // Thrown when the product to change doesn't exist, so callers can tell it apart from database failures
+    public static class ProductNotFoundException extends RuntimeException {
+        ProductNotFoundException(Long id) {
+            super("Product not found with ID: " + id);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,289 @@
+package com.caffinity.demo.service;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.caffinity.demo.entity.Order;
+import com.caffinity.demo.entity.OrderItem;
+import com.caffinity.demo.entity.OrderStatus;
+import com.caffinity.demo.entity.SalesGranularity;
+import com.caffinity.demo.entity.SalesRollup;
+import com.caffinity.demo.repository.SalesRollupRepository;
+
+import jakarta.annotation.PostConstruct;
+
+// Hourly and daily sales per product in sales_rollups, so time-based reports never touch orders.
+// Only COMPLETED orders count, in the bucket of their order date. OrderService adds an order when it
+// becomes COMPLETED (and takes it out again if it leaves that status) in the same transaction.
+// A scheduled job rebuilds whole days from the orders table: all history on its first run after
+// startup, then only the most recent days.
+@Service
+public class SalesRollupService {
+
+    public static final int MAX_REPORT_POINTS = 10_000;
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO sales_rollups (granularity, bucket_start, product_id, order_count, units, revenue) " +
+            "VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), " +
+            "units = units + VALUES(units), revenue = revenue + VALUES(revenue)";
+
+    private static final String FIRST_ORDER_DATE_SQL =
+            "SELECT MIN(order_date) FROM orders WHERE status = 'COMPLETED'";
+
+    private static final String DELETE_RANGE_SQL =
+            "DELETE FROM sales_rollups WHERE bucket_start >= ? AND bucket_start < ?";
+
+    private static final String BACKFILL_HOUR_PRODUCTS_SQL =
+            "INSERT INTO sales_rollups (granularity, bucket_start, product_id, order_count, units, revenue) " +
+            "SELECT 'HOUR', DATE_FORMAT(o.order_date, '%Y-%m-%d %H:00:00') AS bucket, oi.product_id, " +
+            "COUNT(DISTINCT o.order_id), SUM(oi.quantity), SUM(oi.quantity * oi.unit_price) " +
+            "FROM orders o JOIN order_items oi ON oi.order_id = o.order_id " +
+            "WHERE o.status = 'COMPLETED' AND o.order_date >= ? AND o.order_date < ? " +
+            "GROUP BY bucket, oi.product_id";
+
+    private static final String BACKFILL_HOUR_TOTALS_SQL =
+            "INSERT INTO sales_rollups (granularity, bucket_start, product_id, order_count, units, revenue) " +
+            "SELECT 'HOUR', DATE_FORMAT(completed.order_date, '%Y-%m-%d %H:00:00') AS bucket, 0, " +
+            "COUNT(*), SUM(completed.units), SUM(completed.total_amount) " +
+            "FROM (SELECT o.order_date, o.total_amount, " +
+            "      (SELECT COALESCE(SUM(oi.quantity), 0) FROM order_items oi WHERE oi.order_id = o.order_id) AS units " +
+            "      FROM orders o WHERE o.status = 'COMPLETED' AND o.order_date >= ? AND o.order_date < ?) AS completed " +
+            "GROUP BY bucket";
+
+    // Each order falls in exactly one hour, so a day is the sum of its hours
+    private static final String BACKFILL_DAY_SQL =
+            "INSERT INTO sales_rollups (granularity, bucket_start, product_id, order_count, units, revenue) " +
+            "SELECT 'DAY', ?, product_id, SUM(order_count), SUM(units), SUM(revenue) " +
+            "FROM sales_rollups WHERE granularity = 'HOUR' AND bucket_start >= ? AND bucket_start < ? " +
+            "GROUP BY product_id";
+
+    @Autowired
+    private SalesRollupRepository rollupRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${sales.rollup.backfill-enabled:true}")
+    private boolean backfillEnabled;
+
+    // Days rebuilt on every run after the first full backfill
+    @Value("${sales.rollup.recent-days:2}")
+    private int recentDays;
+
+    @Value("${sales.rollup.pause-ms:100}")
+    private long pauseMs;
+
+    private volatile boolean fullBackfillDone;
+
+    private TransactionTemplate rebuildTransaction;
+
+    @PostConstruct
+    void init() {
+        rebuildTransaction = new TransactionTemplate(transactionManager);
+        // Read orders without shared row locks. updateOrderStatus locks the order row and then
+        // upserts sales_rollups; a locking read here would take the same locks in the opposite order.
+        rebuildTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    }
+
+    // Called by OrderService after changing an order's status, inside its transaction
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void statusChanged(OrderStatus previous, Order order) {
+        boolean wasCompleted = previous == OrderStatus.COMPLETED;
+        boolean isCompleted = order.getStatus() == OrderStatus.COMPLETED;
+        if (wasCompleted != isCompleted) {
+            apply(order, isCompleted ? 1 : -1);
+        }
+    }
+
+    // One batched upsert: a row per product plus the whole-order row, for each granularity
+    private void apply(Order order, int sign) {
+        Map<Long, long[]> unitsByProduct = new LinkedHashMap<>();
+        Map<Long, Double> revenueByProduct = new HashMap<>();
+        long totalUnits = 0;
+        for (OrderItem item : order.getOrderItems()) {
+            Long productId = item.getProduct().getProductId();
+            int quantity = item.getQuantity();
+            unitsByProduct.computeIfAbsent(productId, id -> new long[1])[0] += quantity;
+            revenueByProduct.merge(productId, quantity * item.getUnitPrice(), Double::sum);
+            totalUnits += quantity;
+        }
+        double totalRevenue = order.getTotalAmount() != null ? order.getTotalAmount() : 0;
+
+        List<Object[]> rows = new ArrayList<>();
+        for (SalesGranularity granularity : SalesGranularity.values()) {
+            Timestamp bucket = Timestamp.valueOf(bucketStart(order.getOrderDate(), granularity));
+            rows.add(new Object[] { granularity.name(), bucket, SalesRollup.ALL_PRODUCTS,
+                    sign, sign * totalUnits, sign * totalRevenue });
+            for (Map.Entry<Long, long[]> line : unitsByProduct.entrySet()) {
+                rows.add(new Object[] { granularity.name(), bucket, line.getKey(),
+                        sign, sign * line.getValue()[0], sign * revenueByProduct.get(line.getKey()) });
+            }
+        }
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+    }
+
+    @Scheduled(initialDelayString = "${sales.rollup.backfill-initial-delay-ms:120000}",
+               fixedDelayString = "${sales.rollup.backfill-interval-ms:3600000}")
+    public void backfill() {
+        if (!backfillEnabled) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        LocalDate firstDay = today.minusDays(Math.max(recentDays - 1, 0));
+        if (!fullBackfillDone) {
+            LocalDateTime firstOrder = jdbcTemplate.queryForObject(FIRST_ORDER_DATE_SQL, LocalDateTime.class);
+            if (firstOrder != null && firstOrder.toLocalDate().isBefore(firstDay)) {
+                firstDay = firstOrder.toLocalDate();
+            }
+        }
+        long started = System.currentTimeMillis();
+        int days = 0;
+        try {
+            for (LocalDate day = firstDay; !day.isAfter(today); day = day.plusDays(1)) {
+                rebuildDay(day);
+                days++;
+                Thread.sleep(pauseMs);
+            }
+            fullBackfillDone = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (DataAccessException e) {
+            System.err.println("❌ Sales rollup backfill failed at day " + firstDay.plusDays(days) + ": " + e.getMessage());
+        }
+        System.out.println("📈 Rebuilt sales rollups for " + days + " days in " + (System.currentTimeMillis() - started) + " ms");
+    }
+
+    // Replace one day's hourly and daily rows with figures recomputed from orders
+    private void rebuildDay(LocalDate day) {
+        Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+        rebuildTransaction.executeWithoutResult(status -> {
+            jdbcTemplate.update(DELETE_RANGE_SQL, from, to);
+            jdbcTemplate.update(BACKFILL_HOUR_PRODUCTS_SQL, from, to);
+            jdbcTemplate.update(BACKFILL_HOUR_TOTALS_SQL, from, to);
+            jdbcTemplate.update(BACKFILL_DAY_SQL, from, from, to);
+        });
+    }
+
+    // Series for [from, to) with empty buckets filled in; productId null means all products
+    public SalesReport getSalesReport(LocalDateTime from, LocalDateTime to, SalesGranularity granularity, Long productId) {
+        LocalDateTime start = bucketStart(from, granularity);
+        if (!to.isAfter(start)) {
+            throw new IllegalArgumentException("to must be after from");
+        }
+        ChronoUnit unit = granularity == SalesGranularity.HOUR ? ChronoUnit.HOURS : ChronoUnit.DAYS;
+        if (unit.between(start, to) > MAX_REPORT_POINTS) {
+            throw new IllegalArgumentException("At most " + MAX_REPORT_POINTS + " " + granularity.name().toLowerCase() + "s per report");
+        }
+
+        Long rollupProductId = productId != null ? productId : SalesRollup.ALL_PRODUCTS;
+        Map<LocalDateTime, SalesRollup> rollups = new HashMap<>();
+        for (SalesRollup rollup : rollupRepository.findSeries(granularity, rollupProductId, start, to)) {
+            rollups.put(rollup.getBucketStart(), rollup);
+        }
+
+        SalesReport report = new SalesReport(granularity, start, to, productId);
+        for (LocalDateTime bucket = start; bucket.isBefore(to); bucket = bucket.plus(1, unit)) {
+            SalesRollup rollup = rollups.get(bucket);
+            if (rollup == null) {
+                report.add(new SalesPoint(bucket, 0, 0, 0));
+            } else {
+                report.add(new SalesPoint(bucket, rollup.getOrderCount(), rollup.getUnits(), rollup.getRevenue()));
+            }
+        }
+        return report;
+    }
+
+    static LocalDateTime bucketStart(LocalDateTime time, SalesGranularity granularity) {
+        return granularity == SalesGranularity.HOUR
+                ? time.truncatedTo(ChronoUnit.HOURS)
+                : time.truncatedTo(ChronoUnit.DAYS);
+    }
+
+    // Helper class for the sales report
+    public static class SalesReport {
+        private final SalesGranularity granularity;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final Long productId;
+        private final List<SalesPoint> points = new ArrayList<>();
+        private long totalOrders;
+        private long totalUnits;
+        private double totalRevenue;
+
+        SalesReport(SalesGranularity granularity, LocalDateTime from, LocalDateTime to, Long productId) {
+            this.granularity = granularity;
+            this.from = from;
+            this.to = to;
+            this.productId = productId;
+        }
+
+        void add(SalesPoint point) {
+            points.add(point);
+            totalOrders += point.getOrderCount();
+            totalUnits += point.getUnits();
+            totalRevenue += point.getRevenue();
+        }
+
+        public SalesGranularity getGranularity() { return granularity; }
+
+        public LocalDateTime getFrom() { return from; }
+
+        public LocalDateTime getTo() { return to; }
+
+        public Long getProductId() { return productId; }
+
+        public List<SalesPoint> getPoints() { return points; }
+
+        public long getTotalOrders() { return totalOrders; }
+
+        public long getTotalUnits() { return totalUnits; }
+
+        public double getTotalRevenue() { return totalRevenue; }
+    }
+
+    public static class SalesPoint {
+        private final LocalDateTime bucketStart;
+        private final long orderCount;
+        private final long units;
+        private final double revenue;
+
+        SalesPoint(LocalDateTime bucketStart, long orderCount, long units, double revenue) {
+            this.bucketStart = bucketStart;
+            this.orderCount = orderCount;
+            this.units = units;
+            this.revenue = revenue;
+        }
+
+        public LocalDateTime getBucketStart() { return bucketStart; }
+
+        public long getOrderCount() { return orderCount; }
+
+        public long getUnits() { return units; }
+
+        public double getRevenue() { return revenue; }
+    }
+}
@@ -0,0 +1,26 @@
+package com.caffinity.demo.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Shared by the services that publish side effects (caches, counters, search index) only once
+// the database work they describe is committed.
+final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+    }
+
+    // Run once the current transaction commits, or right away when there is none
+    static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.caffinity.demo.controller;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ProductControllerTest {
+
+	@Test
+	void acceptsListedGzip() {
+		assertTrue(ProductController.acceptsGzip("gzip, deflate, br"));
+		assertTrue(ProductController.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+		assertTrue(ProductController.acceptsGzip("*"));
+	}
+
+	@Test
+	void refusesGzipWithZeroQuality() {
+		assertFalse(ProductController.acceptsGzip("gzip;q=0"));
+		assertFalse(ProductController.acceptsGzip("deflate, gzip; q=0.0"));
+		assertFalse(ProductController.acceptsGzip("*, gzip;q=0"));
+		assertFalse(ProductController.acceptsGzip("*;q=0"));
+	}
+
+	@Test
+	void refusesMissingOrOtherEncodings() {
+		assertFalse(ProductController.acceptsGzip(null));
+		assertFalse(ProductController.acceptsGzip("identity"));
+		assertFalse(ProductController.acceptsGzip("deflate, br"));
+	}
+}
@@ -0,0 +1,55 @@
+package com.caffinity.demo.entity;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CartTest {
+
+	@Test
+	void indexFollowsAddAndRemoveOfSameSize() {
+		Cart cart = new Cart("s1");
+		CartItem latte = item(1L);
+		cart.addCartItem(latte);
+		assertSame(latte, cart.findCartItem(1L));
+
+		CartItem mocha = item(2L);
+		cart.addCartItem(mocha);
+		cart.removeCartItem(latte);
+		assertNull(cart.findCartItem(1L));
+		assertSame(mocha, cart.findCartItem(2L));
+	}
+
+	@Test
+	void setCartItemsWithSameSizeListReplacesIndex() {
+		Cart cart = new Cart("s1");
+		cart.addCartItem(item(1L));
+		cart.findCartItem(1L);
+
+		CartItem replacement = item(3L);
+		List<CartItem> items = new ArrayList<>();
+		items.add(replacement);
+		cart.setCartItems(items);
+		assertNull(cart.findCartItem(1L));
+		assertSame(replacement, cart.findCartItem(3L));
+	}
+
+	@Test
+	void itemsCannotBeEditedBehindTheIndex() {
+		Cart cart = new Cart("s1");
+		cart.addCartItem(item(1L));
+		assertThrows(UnsupportedOperationException.class, () -> cart.getCartItems().add(item(2L)));
+		assertThrows(UnsupportedOperationException.class, () -> cart.getCartItems().clear());
+	}
+
+	private static CartItem item(Long productId) {
+		Product product = new Product();
+		product.setProductId(productId);
+		return new CartItem(product, 1, 2.5);
+	}
+}
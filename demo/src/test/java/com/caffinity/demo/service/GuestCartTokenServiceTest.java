@@ -0,0 +1,114 @@
+package com.caffinity.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.caffinity.demo.entity.Cart;
+import com.caffinity.demo.entity.Product;
+
+class GuestCartTokenServiceTest {
+
+	private static final String SECRET = "test-secret";
+
+	private GuestCartTokenService service;
+
+	@BeforeEach
+	void setUp() {
+		Product latte = new Product("Latte", "", 4.5, "drink", "coffee", null);
+		latte.setProductId(1L);
+		ProductCatalogCache catalogCache = mock(ProductCatalogCache.class);
+		when(catalogCache.get()).thenReturn(new ProductCatalogCache.Snapshot(1, List.of(latte)));
+
+		service = new GuestCartTokenService();
+		ReflectionTestUtils.setField(service, "catalogCache", catalogCache);
+		ReflectionTestUtils.setField(service, "enabled", true);
+		ReflectionTestUtils.setField(service, "secret", SECRET);
+		ReflectionTestUtils.setField(service, "ttlDays", 30L);
+		service.init();
+	}
+
+	@Test
+	void roundTripsSignedToken() {
+		String token = service.add(null, 1L, 2).getToken();
+		assertEquals(2, quantity(service.read(token).getCart()));
+	}
+
+	@Test
+	void tamperedTokenReadsAsEmpty() {
+		String token = service.add(null, 1L, 2).getToken();
+		String[] parts = token.split("\\.");
+		Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		String forgedBody = new String(Base64.getUrlDecoder().decode(parts[0]), StandardCharsets.UTF_8)
+				.replace("1:2", "1:900");
+		String forged = encoder.encodeToString(forgedBody.getBytes(StandardCharsets.UTF_8)) + "." + parts[1];
+
+		assertTrue(service.read(forged).getCart().getCartItems().isEmpty());
+	}
+
+	@Test
+	void expiredTokenReadsAsEmpty() throws Exception {
+		long issued = System.currentTimeMillis() / 1000 - 31L * 24 * 60 * 60;
+		assertTrue(service.read(signed("1;" + issued + ";1:2")).getCart().getCartItems().isEmpty());
+
+		long fresh = System.currentTimeMillis() / 1000;
+		assertEquals(2, quantity(service.read(signed("1;" + fresh + ";1:2")).getCart()));
+	}
+
+	@Test
+	void malformedTokensReadAsEmpty() throws Exception {
+		long now = System.currentTimeMillis() / 1000;
+		for (String token : new String[] {
+				"garbage",
+				"no-dot-here",
+				"!!!.???",
+				signed("2;" + now + ";1:2"),
+				signed("1;yesterday;1:2"),
+				signed("1;" + now + ";1-2"),
+				signed("1;" + now + ";1:x"),
+				signed("1;" + now + ";1:0"),
+				signed("1;" + now + ";1:1000"),
+				signed("1;" + now)}) {
+			assertTrue(service.read(token).getCart().getCartItems().isEmpty(), token);
+		}
+	}
+
+	@Test
+	void rejectsQuantityAboveLimit() {
+		assertThrows(RuntimeException.class, () -> service.add(null, 1L, 1000));
+		String token = service.add(null, 1L, 1).getToken();
+		assertThrows(RuntimeException.class, () -> service.update(token, 1L, Integer.MAX_VALUE));
+	}
+
+	@Test
+	void mergedQuantityIsCappedInsteadOfOverflowing() {
+		String token = service.add(null, 1L, 999).getToken();
+		token = service.add(token, 1L, 999).getToken();
+		assertEquals(999, quantity(service.read(token).getCart()));
+	}
+
+	private static int quantity(Cart cart) {
+		return cart.getCartItems().get(0).getQuantity();
+	}
+
+	private static String signed(String payload) throws Exception {
+		byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+		Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		return encoder.encodeToString(body) + "." + encoder.encodeToString(mac.doFinal(body));
+	}
+}
@@ -0,0 +1,103 @@
+package com.caffinity.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.caffinity.demo.entity.OrderIdempotencyKey;
+import com.caffinity.demo.repository.OrderIdempotencyKeyRepository;
+
+class OrderIdempotencyServiceTest {
+
+	// Stands in for order_idempotency_keys; claim behaves like INSERT IGNORE (0 on a duplicate key)
+	private final Map<String, OrderIdempotencyKey> rows = new ConcurrentHashMap<>();
+
+	private OrderIdempotencyService service;
+
+	@BeforeEach
+	void setUp() {
+		OrderIdempotencyKeyRepository repository = mock(OrderIdempotencyKeyRepository.class);
+		when(repository.claim(anyString(), anyString())).thenAnswer(invocation -> {
+			OrderIdempotencyKey row = new OrderIdempotencyKey();
+			row.setIdempotencyKey(invocation.getArgument(0));
+			row.setRequestHash(invocation.getArgument(1));
+			return rows.putIfAbsent(row.getIdempotencyKey(), row) == null ? 1 : 0;
+		});
+		when(repository.findByIdempotencyKeyForUpdate(anyString()))
+				.thenAnswer(invocation -> Optional.ofNullable(rows.get(invocation.<String>getArgument(0))));
+
+		service = new OrderIdempotencyService();
+		ReflectionTestUtils.setField(service, "keyRepository", repository);
+		ReflectionTestUtils.setField(service, "cacheSize", 100);
+	}
+
+	@Test
+	void concurrentSubmissionsWithSameKeyHaveOneOwner() throws Exception {
+		int submissions = 2;
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(submissions);
+		try {
+			List<Future<Long>> results = new ArrayList<>();
+			for (int i = 0; i < submissions; i++) {
+				Callable<Long> submit = () -> {
+					start.await();
+					return service.claim("key-1", "hash");
+				};
+				results.add(executor.submit(submit));
+			}
+			start.countDown();
+
+			int owners = 0;
+			int inProgress = 0;
+			for (Future<Long> result : results) {
+				try {
+					assertNull(result.get());
+					owners++;
+				} catch (ExecutionException e) {
+					assertTrue(e.getCause().getMessage().contains("still being processed"));
+					inProgress++;
+				}
+			}
+			assertEquals(1, owners);
+			assertEquals(1, inProgress);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void retryAfterCommitGetsOriginalOrder() {
+		assertNull(service.claim("key-1", "hash"));
+		rows.get("key-1").setOrderId(42L);
+
+		assertEquals(42L, service.claim("key-1", "hash"));
+	}
+
+	@Test
+	void sameKeyWithDifferentRequestIsRejected() {
+		assertNull(service.claim("key-1", "hash"));
+		rows.get("key-1").setOrderId(42L);
+
+		assertThrows(OrderIdempotencyService.KeyReuseException.class, () -> service.claim("key-1", "other"));
+	}
+}
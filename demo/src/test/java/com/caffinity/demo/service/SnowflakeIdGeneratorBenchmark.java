@@ -0,0 +1,67 @@
+package com.caffinity.demo.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Not run by surefire. Run with:
+//   mvn test-compile org.codehaus.mojo:exec-maven-plugin:3.1.0:exec -Dexec.classpathScope=test \
+//       -Dexec.executable=java -Dexec.args="-cp %classpath org.openjdk.jmh.Main SnowflakeIdGeneratorBenchmark"
+// Compares the generator against the old "TXN-" + currentTimeMillis + Math.random ids,
+// single-threaded and with four threads contending.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnowflakeIdGeneratorBenchmark {
+
+	private final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+
+	@Benchmark
+	public long nextId() {
+		return generator.nextId();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public long nextIdContended() {
+		return generator.nextId();
+	}
+
+	@Benchmark
+	public String transactionId() {
+		return generator.nextId("TXN-");
+	}
+
+	@Benchmark
+	@Threads(4)
+	public String transactionIdContended() {
+		return generator.nextId("TXN-");
+	}
+
+	@Benchmark
+	@Threads(4)
+	public String legacyTransactionIdContended() {
+		return "TXN-" + System.currentTimeMillis() + "-" + (int) (Math.random() * 10000);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(SnowflakeIdGeneratorBenchmark.class.getSimpleName())
+				.build()).run();
+	}
+}
@@ -0,0 +1,110 @@
+package com.caffinity.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class SnowflakeIdGeneratorTest {
+
+	private static final int THREADS = 8;
+	private static final int IDS_PER_THREAD = 250_000;
+
+	@Test
+	void idsAreUniqueAndIncreasingAcrossThreads() throws Exception {
+		SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7);
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			Future<?>[] results = new Future<?>[THREADS];
+			long[][] idsByThread = new long[THREADS][IDS_PER_THREAD];
+			for (int t = 0; t < THREADS; t++) {
+				long[] ids = idsByThread[t];
+				results[t] = pool.submit(() -> {
+					start.await();
+					for (int i = 0; i < ids.length; i++) {
+						ids[i] = generator.nextId();
+					}
+					return null;
+				});
+			}
+			start.countDown();
+			for (Future<?> result : results) {
+				result.get(60, TimeUnit.SECONDS);
+			}
+
+			long[] all = new long[THREADS * IDS_PER_THREAD];
+			for (int t = 0; t < THREADS; t++) {
+				long[] ids = idsByThread[t];
+				for (int i = 1; i < ids.length; i++) {
+					assertTrue(ids[i] > ids[i - 1], "ids from one thread must increase");
+				}
+				System.arraycopy(ids, 0, all, t * IDS_PER_THREAD, IDS_PER_THREAD);
+			}
+			Arrays.sort(all);
+			for (int i = 1; i < all.length; i++) {
+				assertTrue(all[i] != all[i - 1], "duplicate id " + all[i]);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void keepsIncreasingWhenClockGoesBackwards() {
+		AtomicLong now = new AtomicLong(SnowflakeIdGenerator.EPOCH + 10_000);
+		SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, now::get);
+		long before = generator.nextId();
+		now.addAndGet(-5_000);
+		long after = generator.nextId();
+		assertTrue(after > before);
+	}
+
+	@Test
+	void borrowsNextMillisecondWhenSequenceIsExhausted() {
+		long millis = SnowflakeIdGenerator.EPOCH + 10_000;
+		SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, () -> millis);
+		long previous = generator.nextId();
+		for (int i = 0; i <= SnowflakeIdGenerator.SEQUENCE_MASK; i++) {
+			long id = generator.nextId();
+			assertTrue(id > previous);
+			previous = id;
+		}
+		assertEquals(millis + 1, SnowflakeIdGenerator.timestampOf(previous));
+	}
+
+	@Test
+	void encodesTimestampAndNodeId() {
+		long millis = SnowflakeIdGenerator.EPOCH + 123_456_789L;
+		long id = new SnowflakeIdGenerator(1023, () -> millis).nextId();
+		assertEquals(millis, SnowflakeIdGenerator.timestampOf(id));
+		assertEquals(1023, SnowflakeIdGenerator.nodeIdOf(id));
+	}
+
+	@Test
+	void prefixedIdsSortLikeTheirNumbers() {
+		AtomicLong now = new AtomicLong(SnowflakeIdGenerator.EPOCH + 1);
+		SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0, now::get);
+		String small = generator.nextId("TXN-");
+		now.set(SnowflakeIdGenerator.EPOCH + 100_000_000_000L);
+		String large = generator.nextId("TXN-");
+		assertEquals(23, small.length());
+		assertEquals(23, large.length());
+		assertTrue(small.compareTo(large) < 0);
+	}
+
+	@Test
+	void rejectsNodeIdOutOfRange() {
+		assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1));
+		assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1));
+	}
+}